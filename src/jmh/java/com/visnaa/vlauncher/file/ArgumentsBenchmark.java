@@ -0,0 +1,43 @@
+package com.visnaa.vlauncher.file;
+
+import com.visnaa.vlauncher.minecraft.LaunchPlan;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArgumentsBenchmark
+{
+    private Path root;
+    private Downloader downloader;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        root = Files.createTempDirectory("vlauncher-args-bench");
+        downloader = new Downloader(root.toString());
+        downloader.useVersionData(Fixtures.versionJson(), root.resolve("natives"));
+        downloader.planInstall();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        FileHelper.deleteRecursively(root);
+    }
+
+    @Benchmark
+    public LaunchPlan buildLaunchPlan()
+    {
+        return downloader.buildLaunchPlan(false, "Player", List.of("-Xmx2G", "-XX:+UseG1GC"));
+    }
+}
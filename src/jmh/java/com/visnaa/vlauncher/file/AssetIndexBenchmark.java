@@ -0,0 +1,125 @@
+package com.visnaa.vlauncher.file;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.visnaa.vlauncher.minecraft.AssetIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.StringReader;
+import java.lang.ref.Reference;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AssetIndexBenchmark
+{
+    private static final int FOOTPRINT_COPIES = 16;
+
+    @Param({"4000"})
+    public int objects;
+
+    private String json;
+    private JsonObject tree;
+    private AssetIndex compact;
+
+    @Setup
+    public void setup()
+    {
+        json = Fixtures.assetIndexJson(objects);
+        tree = JsonParser.parseString(json).getAsJsonObject().getAsJsonObject("objects");
+        compact = AssetIndex.parse(new StringReader(json));
+    }
+
+    @Benchmark
+    public JsonObject parseTree()
+    {
+        return JsonParser.parseString(json).getAsJsonObject().getAsJsonObject("objects");
+    }
+
+    @Benchmark
+    public long iterateTree()
+    {
+        long size = 0;
+        for (Map.Entry<String, JsonElement> entry : tree.asMap().entrySet())
+        {
+            JsonObject asset = entry.getValue().getAsJsonObject();
+            if (asset.get("hash").getAsString().charAt(0) != ' ')
+                size += asset.get("size").getAsInt();
+        }
+        return size;
+    }
+
+    @Benchmark
+    public AssetIndex parseCompact()
+    {
+        return AssetIndex.parse(new StringReader(json));
+    }
+
+    @Benchmark
+    public long iterateCompact()
+    {
+        long size = 0;
+        for (int i = 0; i < compact.size(); i++)
+        {
+            if (compact.getHashByte(i, 0) != ' ')
+                size += compact.getSize(i);
+        }
+        return size;
+    }
+
+    /**
+     * Reports the heap each representation keeps per index as the {@code treeBytes} and {@code compactBytes}
+     * counters, the time of this benchmark itself is meaningless. The counters add up over iterations, so only one is
+     * measured.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 1)
+    public void footprint(Footprint footprint)
+    {
+        footprint.treeBytes = retainedBytes(() -> JsonParser.parseString(json).getAsJsonObject().getAsJsonObject("objects"));
+        footprint.compactBytes = retainedBytes(() -> AssetIndex.parse(new StringReader(json)));
+    }
+
+    private static long retainedBytes(Supplier<Object> factory)
+    {
+        Object[] copies = new Object[FOOTPRINT_COPIES];
+        long before = usedHeap();
+        for (int i = 0; i < copies.length; i++)
+            copies[i] = factory.get();
+        long after = usedHeap();
+        Reference.reachabilityFence(copies);
+        return (after - before) / FOOTPRINT_COPIES;
+    }
+
+    private static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint
+    {
+        public long treeBytes;
+        public long compactBytes;
+
+        @Setup(Level.Iteration)
+        public void reset()
+        {
+            treeBytes = 0;
+            compactBytes = 0;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.visnaa.vlauncher.file;
+
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class DownloadBenchmark
+{
+    private static final int LARGE_SIZE = 32 * 1024 * 1024;
+    private static final int SMALL_FILES = 512;
+    private static final int SMALL_SIZE = 8 * 1024;
+
+    @Param({"1", "16"})
+    public int workers;
+
+    private final Map<String, byte[]> fixtures = new HashMap<>();
+    private HttpServer server;
+    private Path root;
+    private String baseUrl;
+    private String largeSha1;
+    private List<Artifact> smallFiles;
+
+    @Setup(Level.Trial)
+    public void startServer() throws IOException
+    {
+        byte[] large = Fixtures.randomBytes(LARGE_SIZE, 1);
+        fixtures.put("/large.bin", large);
+        largeSha1 = Fixtures.sha1(large);
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            byte[] body = fixtures.get(exchange.getRequestURI().getPath());
+            if (body == null)
+            {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream stream = exchange.getResponseBody())
+            {
+                stream.write(body);
+            }
+        });
+        server.start();
+        baseUrl = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+        root = Files.createTempDirectory("vlauncher-download-bench");
+
+        smallFiles = new ArrayList<>(SMALL_FILES);
+        for (int i = 0; i < SMALL_FILES; i++)
+        {
+            byte[] bytes = Fixtures.randomBytes(SMALL_SIZE, i);
+            String sha1 = Fixtures.sha1(bytes);
+            String location = "/objects/" + sha1.substring(0, 2) + "/" + sha1;
+            fixtures.put(location, bytes);
+            smallFiles.add(new Artifact("object " + i, root.resolve("small").resolve(location.substring(1)), baseUrl + location, SMALL_SIZE, sha1));
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void clearDownloads() throws IOException
+    {
+        FileHelper.deleteRecursively(root.resolve("small"));
+        Files.deleteIfExists(root.resolve("large.bin"));
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() throws IOException
+    {
+        server.stop(0);
+        FileHelper.deleteRecursively(root);
+    }
+
+    @Benchmark
+    public Object largeFile()
+    {
+        return FileHelper.downloadToFile(root.resolve("large.bin"), baseUrl + "/large.bin", LARGE_SIZE, largeSha1);
+    }
+
+    @Benchmark
+    public Object smallFiles()
+    {
+        DownloadEngine engine = new DownloadEngine(workers, null);
+        try
+        {
+            return engine.downloadAll(smallFiles);
+        }
+        finally
+        {
+            engine.shutdown();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.visnaa.vlauncher.file;
+
+import com.visnaa.vlauncher.minecraft.VersionData;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+final class Fixtures
+{
+    private Fixtures()
+    {
+    }
+
+    static byte[] randomBytes(int size, long seed)
+    {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    static byte[] compressibleBytes(int size, long seed)
+    {
+        Random random = new Random(seed);
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++)
+            bytes[i] = (byte) ('a' + random.nextInt(8));
+        return bytes;
+    }
+
+    static String sha1(byte[] bytes)
+    {
+        try
+        {
+            return FileHelper.toHex(java.security.MessageDigest.getInstance("SHA-1").digest(bytes));
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static Path createZip(Path path, int entries, int entrySize) throws IOException
+    {
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(path)))
+        {
+            for (int i = 0; i < entries; i++)
+            {
+                zip.putNextEntry(new ZipEntry("lib/module" + (i % 16) + "/file" + i + (i % 4 == 0 ? ".dll" : ".class")));
+                zip.write(i % 2 == 0 ? compressibleBytes(entrySize, i) : randomBytes(entrySize, i));
+                zip.closeEntry();
+            }
+        }
+        return path;
+    }
+
+    static String assetIndexJson(int objects)
+    {
+        Random random = new Random(42);
+        StringBuilder json = new StringBuilder("{\"objects\":{");
+        for (int i = 0; i < objects; i++)
+        {
+            if (i > 0)
+                json.append(',');
+            String folder = i % 5 == 0 ? "minecraft/sounds/ambient/cave/cave" : "minecraft/lang/lang";
+            json.append("\"").append(folder).append(i).append(i % 5 == 0 ? ".ogg" : ".json").append("\":{\"hash\":\"")
+                    .append(sha1(randomBytes(16, random.nextLong()))).append("\",\"size\":").append(1000 + random.nextInt(200_000)).append('}');
+        }
+        return json.append("}}").toString();
+    }
+
+    static VersionData versionJson()
+    {
+        try (InputStream stream = Fixtures.class.getResourceAsStream("/fixtures/version.json"))
+        {
+            return VersionData.parse(new InputStreamReader(stream, StandardCharsets.UTF_8));
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static void write(Path path, byte[] bytes) throws IOException
+    {
+        Files.createDirectories(path.getParent());
+        try (OutputStream stream = Files.newOutputStream(path))
+        {
+            stream.write(bytes);
+        }
+    }
+}
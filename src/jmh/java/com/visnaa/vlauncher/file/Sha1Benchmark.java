@@ -0,0 +1,62 @@
+package com.visnaa.vlauncher.file;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Sha1Benchmark
+{
+    @Param({"4096", "1048576", "67108864"})
+    public int size;
+
+    private byte[] bytes;
+    private String sha1;
+    private Path root;
+    private Path file;
+    private VerificationIndex index;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        bytes = Fixtures.randomBytes(size, size);
+        sha1 = Fixtures.sha1(bytes);
+        root = Files.createTempDirectory("vlauncher-sha1-bench");
+        file = root.resolve("object.bin");
+        Fixtures.write(file, bytes);
+        index = new VerificationIndex(root);
+        index.record(file, sha1);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        FileHelper.deleteRecursively(root);
+    }
+
+    @Benchmark
+    public boolean validateBytes()
+    {
+        return FileHelper.validateSha1(bytes, sha1);
+    }
+
+    @Benchmark
+    public String hashFile()
+    {
+        return FileHelper.sha1(file);
+    }
+
+    @Benchmark
+    public boolean verifyIndexed()
+    {
+        return index.isVerified(file, size, sha1);
+    }
+}
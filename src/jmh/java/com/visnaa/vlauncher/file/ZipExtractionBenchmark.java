@@ -0,0 +1,51 @@
+package com.visnaa.vlauncher.file;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ZipExtractionBenchmark
+{
+    @Param({"", "dll"})
+    public String extension;
+
+    private Path root;
+    private Path archive;
+    private Path destination;
+
+    @Setup(Level.Trial)
+    public void createArchive() throws IOException
+    {
+        root = Files.createTempDirectory("vlauncher-zip-bench");
+        archive = Fixtures.createZip(root.resolve("fixture.zip"), 400, 256 * 1024);
+        destination = root.resolve("out");
+    }
+
+    @Setup(Level.Invocation)
+    public void clearDestination() throws IOException
+    {
+        FileHelper.deleteRecursively(destination);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException
+    {
+        FileHelper.deleteRecursively(root);
+    }
+
+    @Benchmark
+    public boolean extract()
+    {
+        return new ZipExtractor(archive.toFile(), destination, extension.isEmpty() ? Set.of() : Set.of(extension)).extract();
+    }
+}
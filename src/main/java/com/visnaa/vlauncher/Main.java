@@ -1,31 +1,88 @@
 package com.visnaa.vlauncher;
 
 import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.visnaa.vlauncher.cli.HeadlessInstaller;
+import com.visnaa.vlauncher.file.Artifact;
+import com.visnaa.vlauncher.file.DownloadEngine;
+import com.visnaa.vlauncher.file.DownloadMetrics;
 import com.visnaa.vlauncher.file.Downloader;
+import com.visnaa.vlauncher.file.HttpTransport;
+import com.visnaa.vlauncher.file.InstallBundle;
+import com.visnaa.vlauncher.file.InstallPlan;
+import com.visnaa.vlauncher.file.IntegrityVerifier;
+import com.visnaa.vlauncher.file.LaunchRecorder;
+import com.visnaa.vlauncher.file.ObjectStore;
 import com.visnaa.vlauncher.gui.GuiManager;
 import com.visnaa.vlauncher.file.FileHelper;
+import com.visnaa.vlauncher.minecraft.LaunchPlan;
 import com.visnaa.vlauncher.minecraft.Profile;
+import com.visnaa.vlauncher.server.MirrorServer;
 
 import javax.swing.*;
 import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Main
 {
     private static Main instance;
+    private final long startTime = System.nanoTime();
+    private CompletableFuture<Void> dataLoaded = new CompletableFuture<>();
     private GuiManager guiManager;
     private Downloader downloader;
+    private final Map<Path, Downloader> profileDownloaders = new ConcurrentHashMap<>();
+    private ObjectStore objectStore;
+    private String objectStorePath;
     private Process minecraft;
     private Profile currentProfile;
     private List<Profile> profiles = new ArrayList<>();
     private String playerName;
     private String lastProfileName;
+    private int downloadWorkers;
+    private int connectTimeout;
+    private int requestTimeout;
+    private boolean deepVerify;
+    private boolean flightRecorder;
+    private int retries;
+    private int hedgePercentile;
+    private JsonObject mirrors;
 
     public static void main(String[] args)
     {
+        if (Arrays.asList(args).contains("--mirror-server"))
+        {
+            try
+            {
+                MirrorServer.fromArgs(args).start();
+            }
+            catch (Exception e)
+            {
+                System.err.println("Could not start mirror server: " + e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+
+        if (Arrays.asList(args).contains("--install"))
+        {
+            // Keep standard output for machine-readable progress
+            PrintStream output = System.out;
+            System.setOut(System.err);
+            instance = new Main();
+            instance.loadLauncherData();
+            System.exit(new HeadlessInstaller(output, instance.downloadWorkers, instance.objectStore, instance.deepVerify).run(args));
+        }
+
         instance = new Main();
 
         instance.run();
@@ -33,11 +90,38 @@ public class Main
 
     public void run()
     {
-        downloader = new Downloader(".minecraft");
+        CompletableFuture<JsonObject> launcherData = CompletableFuture.supplyAsync(() -> FileHelper.loadJsonConfigFile("vlauncher.json"));
+        CompletableFuture<JsonObject> profileData = CompletableFuture.supplyAsync(() -> FileHelper.loadJsonConfigFile("profiles.json"));
 
-        loadLauncherData();
-        loadProfiles();
         initGui();
+
+        CompletableFuture<Void> config = launcherData.thenAccept(data -> {
+            loadLauncherData(data);
+            guiManager.setPlayerName(playerName);
+            guiManager.setFlightRecorder(flightRecorder);
+        });
+        CompletableFuture<Void> profiles = config.thenCombine(profileData, (_, data) -> data).thenAccept(this::loadProfiles);
+        dataLoaded = CompletableFuture.allOf(config, profiles);
+        CompletableFuture<Void> manifest = config.thenRunAsync(() -> {
+            HttpTransport.prewarm();
+            Downloader downloader = new Downloader(Path.of(".minecraft"), downloadWorkers, objectStore);
+            downloader.setDeepVerify(deepVerify);
+            downloader.setListener(guiManager);
+            downloader.loadVersionManifest();
+            this.downloader = downloader;
+            guiManager.setDownloaderReady();
+            System.out.println("Version manifest loaded in " + (System.nanoTime() - startTime) / 1_000_000 + " ms");
+        });
+
+        CompletableFuture.allOf(profiles, manifest).whenComplete((_, e) -> {
+            if (e != null)
+            {
+                e.printStackTrace();
+                guiManager.showError("Could not load launcher data: " + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()));
+            }
+            else if (currentProfile == null)
+                guiManager.createProfileCreation();
+        });
     }
 
     public void initGui()
@@ -48,9 +132,29 @@ public class Main
 
     public void loadLauncherData()
     {
-        JsonObject data = FileHelper.loadJsonConfigFile("vlauncher.json");
+        loadLauncherData(FileHelper.loadJsonConfigFile("vlauncher.json"));
+    }
+
+    private void loadLauncherData(JsonObject data)
+    {
         playerName = data.has("playerName") ? data.get("playerName").getAsString() : "VPlayer";
         lastProfileName = data.has("lastProfile") ? data.get("lastProfile").getAsString() : null;
+        downloadWorkers = data.has("downloadWorkers") ? data.get("downloadWorkers").getAsInt() : DownloadEngine.DEFAULT_WORKERS;
+        connectTimeout = data.has("connectTimeout") ? data.get("connectTimeout").getAsInt() : HttpTransport.DEFAULT_CONNECT_TIMEOUT;
+        requestTimeout = data.has("requestTimeout") ? data.get("requestTimeout").getAsInt() : HttpTransport.DEFAULT_REQUEST_TIMEOUT;
+        HttpTransport.configure(connectTimeout, requestTimeout);
+        retries = data.has("retries") ? data.get("retries").getAsInt() : HttpTransport.DEFAULT_RETRIES;
+        HttpTransport.setRetries(retries);
+        hedgePercentile = data.has("hedgePercentile") ? data.get("hedgePercentile").getAsInt() : HttpTransport.DEFAULT_HEDGE_PERCENTILE;
+        HttpTransport.setHedgePercentile(hedgePercentile);
+        mirrors = data.has("mirrors") ? data.getAsJsonObject("mirrors") : new JsonObject();
+        Map<String, List<String>> mirrorUrls = new LinkedHashMap<>();
+        mirrors.asMap().forEach((base, urls) -> mirrorUrls.put(base, urls.getAsJsonArray().asList().stream().map(JsonElement::getAsString).toList()));
+        HttpTransport.setMirrors(mirrorUrls);
+        objectStorePath = data.has("objectStore") ? data.get("objectStore").getAsString() : "vlauncher-store";
+        objectStore = new ObjectStore(Path.of(objectStorePath));
+        deepVerify = data.has("deepVerify") && data.get("deepVerify").getAsBoolean();
+        setFlightRecorder(data.has("flightRecorder") && data.get("flightRecorder").getAsBoolean());
     }
 
     public void saveLauncherData()
@@ -58,13 +162,26 @@ public class Main
         JsonObject data = new JsonObject();
         data.addProperty("playerName", playerName);
         data.addProperty("lastProfile", currentProfile == null ? this.profiles.getFirst().name() : currentProfile.name());
+        data.addProperty("downloadWorkers", downloadWorkers);
+        data.addProperty("connectTimeout", connectTimeout);
+        data.addProperty("requestTimeout", requestTimeout);
+        data.addProperty("retries", retries);
+        data.addProperty("hedgePercentile", hedgePercentile);
+        data.add("mirrors", mirrors);
+        data.addProperty("objectStore", objectStorePath);
+        data.addProperty("deepVerify", deepVerify);
+        data.addProperty("flightRecorder", flightRecorder);
         FileHelper.saveJsonConfigFile(data, "vlauncher.json");
     }
 
     public void loadProfiles()
     {
-        profiles = new ArrayList<>();
-        JsonObject profiles = FileHelper.loadJsonConfigFile("profiles.json");
+        loadProfiles(FileHelper.loadJsonConfigFile("profiles.json"));
+    }
+
+    private void loadProfiles(JsonObject profiles)
+    {
+        this.profiles = new ArrayList<>();
         if (!profiles.isEmpty())
         {
             profiles.get("profiles").getAsJsonArray().forEach(element -> this.profiles.add(new Profile(element.getAsJsonObject())));
@@ -120,14 +237,33 @@ public class Main
         saveLauncherData();
         saveProfiles();
 
-        download(currentProfile.version(), playerName, currentProfile.jvmArgs());
+        Downloader downloader = getDownloader(currentProfile);
+        LaunchPlan plan = downloader.loadLaunchPlan(currentProfile.name(), currentProfile.version(), playerName, currentProfile.jvmArgs());
+        if (plan != null)
+            System.out.println("Launching " + currentProfile.version() + " from the cached launch plan");
+        else
+        {
+            try
+            {
+                download(downloader, currentProfile.version(), playerName, currentProfile.jvmArgs());
+                plan = downloader.getLaunchPlan();
+                downloader.saveLaunchPlan(currentProfile.name());
+            }
+            catch (RuntimeException e)
+            {
+                e.printStackTrace();
+                guiManager.disposeLoadingPopup();
+                guiManager.showError("Could not download Minecraft " + currentProfile.version() + ": " + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()));
+                return;
+            }
+        }
 
         try
         {
             guiManager.disposeLoadingPopup();
             guiManager.minimize();
-            ProcessBuilder builder = new ProcessBuilder(downloader.getRunPath().toAbsolutePath().toString());
-            builder.directory(downloader.getRootDirectory().toAbsolutePath().toFile());
+            ProcessBuilder builder = new ProcessBuilder(plan.command());
+            builder.directory(plan.workingDirectory().toFile());
             builder.inheritIO();
             Process minecraft = builder.start();
             minecraft.onExit().thenAccept(_ -> {
@@ -142,19 +278,126 @@ public class Main
         }
     }
 
-    public void download(String version, String playerName, List<String> userJvmArgs)
+    public void download(Downloader downloader, String version, String playerName, List<String> userJvmArgs)
+    {
+        DownloadMetrics.get().reset();
+        guiManager.createLoadingPopup(0);
+        downloader.createInstallPipeline(version, true)
+                .add("args", () -> {
+                    downloader.saveVerificationIndex();
+                    downloader.createArgs(false, playerName, userJvmArgs);
+                }, "runtime", "client", "libraries", "objects", "natives")
+                .run();
+        exportMetrics(downloader);
+    }
+
+    private void exportMetrics(Downloader downloader)
+    {
+        System.out.print(DownloadMetrics.get().getSummary());
+        System.out.println("Download metrics written to " + DownloadMetrics.get().export(downloader.getRootDirectory().resolve("vlauncher-metrics")));
+        LaunchRecorder.dump(getRecordingsDirectory(downloader));
+    }
+
+    private static Path getRecordingsDirectory(Downloader downloader)
     {
-        downloader.setVersion(version);
-        downloader.loadVersionData();
-        downloader.loadAssetIndex();
+        return downloader.getRootDirectory().resolve("vlauncher-recordings");
+    }
 
-        guiManager.createLoadingPopup(downloader.getEstimatedSize());
+    public void setFlightRecorder(boolean flightRecorder)
+    {
+        this.flightRecorder = flightRecorder;
+        if (flightRecorder)
+            LaunchRecorder.start();
+        else
+            stopFlightRecorder();
+    }
 
-        downloader.downloadJava();
-        downloader.downloadVersion();
-        downloader.downloadLibraries();
-        downloader.downloadObjects();
-        downloader.createArgs(false, playerName, userJvmArgs);
+    // Before the version manifest is loaded there is no downloader, and nothing worth keeping was recorded yet
+    private void stopFlightRecorder()
+    {
+        if (LaunchRecorder.isRecording() && downloader != null)
+            LaunchRecorder.stop(getRecordingsDirectory(getDownloader(currentProfile)));
+    }
+
+    public void verifyAndRepair()
+    {
+        DownloadMetrics.get().reset();
+        Downloader downloader = getDownloader(currentProfile);
+        try
+        {
+            downloader.setVersion(currentProfile.version());
+            downloader.loadVersionData();
+            downloader.loadAssetIndex();
+
+            List<Artifact> artifacts = downloader.getInstallArtifacts();
+            guiManager.createLoadingPopup(InstallPlan.sizeOf(artifacts));
+            guiManager.setLoadingText("Verifying " + artifacts.size() + " files");
+
+            IntegrityVerifier.Report report = downloader.verifyAndRepair(artifacts);
+            exportMetrics(downloader);
+            SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(guiManager.getFrame(), report.toString(), "Verify & Repair", JOptionPane.INFORMATION_MESSAGE));
+        }
+        catch (RuntimeException e)
+        {
+            e.printStackTrace();
+            guiManager.showError("Could not verify " + currentProfile.version() + ": " + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()));
+        }
+        finally
+        {
+            guiManager.disposeLoadingPopup();
+        }
+    }
+
+    public void exportBundle(Path bundle)
+    {
+        DownloadMetrics.get().reset();
+        Downloader downloader = getDownloader(currentProfile);
+        try
+        {
+            downloader.setVersion(currentProfile.version());
+            downloader.loadVersionData();
+            downloader.loadAssetIndex();
+
+            guiManager.createLoadingPopup(InstallPlan.sizeOf(downloader.getInstallArtifacts()));
+            guiManager.setLoadingText("Exporting " + currentProfile.version() + " to " + bundle.getFileName());
+            InstallBundle.Report report = downloader.exportBundle(bundle);
+            SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(guiManager.getFrame(), "Exported " + report, "Export Bundle", JOptionPane.INFORMATION_MESSAGE));
+        }
+        catch (RuntimeException e)
+        {
+            e.printStackTrace();
+            guiManager.showError("Could not export " + bundle.getFileName() + ": " + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()));
+        }
+        finally
+        {
+            guiManager.disposeLoadingPopup();
+        }
+    }
+
+    public void importBundle(Path bundle)
+    {
+        Downloader downloader = getDownloader(currentProfile);
+        guiManager.createLoadingPopup(bundle.toFile().length());
+        guiManager.setLoadingText("Importing " + bundle.getFileName());
+        try
+        {
+            InstallBundle.Report report = downloader.importBundle(bundle);
+            SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(guiManager.getFrame(), "Imported " + report, "Import Bundle", JOptionPane.INFORMATION_MESSAGE));
+        }
+        catch (RuntimeException e)
+        {
+            e.printStackTrace();
+            guiManager.showError("Could not import " + bundle.getFileName() + ": " + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()));
+        }
+        finally
+        {
+            guiManager.disposeLoadingPopup();
+        }
+    }
+
+    public long getStartTime()
+    {
+        return startTime;
     }
 
     public static Main getInstance()
@@ -167,6 +410,24 @@ public class Main
         return downloader;
     }
 
+    // Profiles in their own directory get their own downloader, sharing objects through the store
+    public Downloader getDownloader(Profile profile)
+    {
+        if (profile == null || profile.minecraftPath() == null)
+            return downloader;
+
+        Path root = profile.minecraftPath().toAbsolutePath().normalize();
+        if (root.equals(downloader.getRootDirectory().toAbsolutePath().normalize()))
+            return downloader;
+
+        return profileDownloaders.computeIfAbsent(root, _ -> {
+            Downloader profileDownloader = new Downloader(root, downloadWorkers, objectStore);
+            profileDownloader.setDeepVerify(deepVerify);
+            profileDownloader.setListener(guiManager);
+            return profileDownloader;
+        });
+    }
+
     public GuiManager getGuiManager()
     {
         return guiManager;
@@ -200,8 +461,12 @@ public class Main
 
     public void exit()
     {
-        saveLauncherData();
-        saveProfiles();
+        if (dataLoaded.isDone() && !dataLoaded.isCompletedExceptionally())
+        {
+            saveLauncherData();
+            saveProfiles();
+        }
+        stopFlightRecorder();
         if (minecraft != null)
             destroyProcess(minecraft.toHandle());
     }
@@ -0,0 +1,252 @@
+package com.visnaa.vlauncher.cli;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.visnaa.vlauncher.file.Artifact;
+import com.visnaa.vlauncher.file.DownloadMetrics;
+import com.visnaa.vlauncher.file.DownloadProgress;
+import com.visnaa.vlauncher.file.Downloader;
+import com.visnaa.vlauncher.file.FileHelper;
+import com.visnaa.vlauncher.file.ObjectStore;
+import com.visnaa.vlauncher.minecraft.Profile;
+
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Installs versions without a display, for provisioning machines from scripts. Progress is written to standard output
+ * as one JSON object per line, and the exit code tells whether every version was installed.
+ */
+public class HeadlessInstaller
+{
+    public static final int EXIT_OK = 0;
+    public static final int EXIT_FAILED = 1;
+    public static final int EXIT_USAGE = 2;
+    public static final int DEFAULT_PARALLEL = 4;
+    public static final long PROGRESS_INTERVAL_MILLIS = 500;
+    public static final String USAGE = "Usage: --install [--root DIR] [--version ID]... [--profiles FILE] [--parallel N] [--workers N] [--skip-runtime]";
+
+    private final PrintStream output;
+    private final ObjectStore objectStore;
+    private final boolean deepVerify;
+    private int downloadWorkers;
+
+    public HeadlessInstaller(PrintStream output, int downloadWorkers, ObjectStore objectStore, boolean deepVerify)
+    {
+        this.output = output;
+        this.downloadWorkers = downloadWorkers;
+        this.objectStore = objectStore;
+        this.deepVerify = deepVerify;
+    }
+
+    public int run(String[] args)
+    {
+        Path root = null;
+        List<String> versions = new ArrayList<>();
+        Path profilesFile = null;
+        int parallel = DEFAULT_PARALLEL;
+        boolean runtime = true;
+        try
+        {
+            for (int i = 0; i < args.length; i++)
+            {
+                switch (args[i])
+                {
+                    case "--install" -> {}
+                    case "--root" -> root = Path.of(args[++i]);
+                    case "--version" -> versions.addAll(List.of(args[++i].split(",")));
+                    case "--profiles" -> profilesFile = Path.of(args[++i]);
+                    case "--parallel" -> parallel = Math.max(1, Integer.parseInt(args[++i]));
+                    case "--workers" -> downloadWorkers = Integer.parseInt(args[++i]);
+                    case "--skip-runtime" -> runtime = false;
+                    default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+        }
+        catch (RuntimeException e)
+        {
+            emitError(null, e.getMessage() + "\n" + USAGE);
+            return EXIT_USAGE;
+        }
+
+        // Versions from profiles go into their own directory unless a root is given
+        Map<Path, Set<String>> targets = new LinkedHashMap<>();
+        Path defaultRoot = root != null ? root : Path.of(".minecraft");
+        versions.forEach(version -> targets.computeIfAbsent(defaultRoot.toAbsolutePath().normalize(), _ -> new LinkedHashSet<>()).add(version));
+        if (profilesFile != null)
+        {
+            JsonObject profiles = FileHelper.loadJsonConfigFile(profilesFile.toString());
+            if (profiles.has("profiles"))
+            {
+                for (JsonElement element : profiles.getAsJsonArray("profiles"))
+                {
+                    Profile profile = new Profile(element.getAsJsonObject());
+                    Path profileRoot = root != null || profile.minecraftPath() == null ? defaultRoot : profile.minecraftPath();
+                    targets.computeIfAbsent(profileRoot.toAbsolutePath().normalize(), _ -> new LinkedHashSet<>()).add(profile.version());
+                }
+            }
+        }
+        if (targets.isEmpty())
+        {
+            emitError(null, "Nothing to install\n" + USAGE);
+            return EXIT_USAGE;
+        }
+
+        long start = System.nanoTime();
+        DownloadMetrics.get().reset();
+        AtomicInteger installed = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        List<Downloader> downloaders = new ArrayList<>();
+        boolean installRuntime = runtime;
+        try (ExecutorService executor = Executors.newFixedThreadPool(parallel))
+        {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Map.Entry<Path, Set<String>> target : targets.entrySet())
+            {
+                Downloader downloader = new Downloader(target.getKey(), downloadWorkers, objectStore);
+                downloader.setDeepVerify(deepVerify);
+                downloaders.add(downloader);
+                try
+                {
+                    downloader.loadVersionManifest();
+                }
+                catch (RuntimeException e)
+                {
+                    System.out.println("Could not load the version manifest for " + target.getKey() + ": " + e);
+                }
+
+                for (String version : target.getValue())
+                {
+                    Downloader fork = downloader.fork();
+                    futures.add(executor.submit(() -> {
+                        if (install(fork, target.getKey(), version, installRuntime))
+                            installed.incrementAndGet();
+                        else
+                            failed.incrementAndGet();
+                    }));
+                }
+            }
+            for (Future<?> future : futures)
+                future.get();
+        }
+        catch (Exception e)
+        {
+            emitError(null, e.toString());
+            return EXIT_FAILED;
+        }
+        finally
+        {
+            downloaders.forEach(Downloader::shutdown);
+        }
+
+        JsonObject metrics = DownloadMetrics.get().toJson();
+        JsonObject summary = event("summary", null);
+        summary.addProperty("installed", installed.get());
+        summary.addProperty("failed", failed.get());
+        summary.addProperty("bytes", metrics.get("bytes").getAsLong());
+        summary.addProperty("files", metrics.get("files").getAsLong());
+        summary.addProperty("seconds", (System.nanoTime() - start) / 1e9);
+        emit(summary);
+        return failed.get() == 0 ? EXIT_OK : EXIT_FAILED;
+    }
+
+    private boolean install(Downloader downloader, Path root, String version, boolean runtime)
+    {
+        long start = System.nanoTime();
+        Progress progress = new Progress(version);
+        downloader.setListener(progress);
+        JsonObject started = event("start", version);
+        started.addProperty("root", root.toString());
+        emit(started);
+        try
+        {
+            downloader.createInstallPipeline(version, runtime).run();
+            downloader.saveVerificationIndex();
+            progress.emitProgress();
+            JsonObject done = event("done", version);
+            done.addProperty("seconds", (System.nanoTime() - start) / 1e9);
+            emit(done);
+            return true;
+        }
+        catch (RuntimeException e)
+        {
+            e.printStackTrace();
+            emitError(version, e.getCause() != null ? e.getCause().toString() : e.toString());
+            return false;
+        }
+    }
+
+    private static JsonObject event(String type, String version)
+    {
+        JsonObject json = new JsonObject();
+        json.addProperty("event", type);
+        if (version != null)
+            json.addProperty("version", version);
+        return json;
+    }
+
+    private void emitError(String version, String message)
+    {
+        JsonObject error = event("error", version);
+        error.addProperty("message", message);
+        emit(error);
+    }
+
+    private void emit(JsonObject json)
+    {
+        synchronized (output)
+        {
+            output.println(json);
+            output.flush();
+        }
+    }
+
+    private class Progress extends DownloadProgress
+    {
+        private final String version;
+        private final AtomicLong lastEmit = new AtomicLong();
+
+        private Progress(String version)
+        {
+            this.version = version;
+        }
+
+        @Override
+        public void fileStarted(Artifact artifact)
+        {
+        }
+
+        @Override
+        public void progress(long bytes)
+        {
+            super.progress(bytes);
+            long now = System.currentTimeMillis();
+            long last = lastEmit.get();
+            if (now - last >= PROGRESS_INTERVAL_MILLIS && lastEmit.compareAndSet(last, now))
+                emitProgress();
+        }
+
+        private void emitProgress()
+        {
+            Snapshot snapshot = sample();
+            JsonObject progress = event("progress", version);
+            progress.addProperty("bytes", snapshot.done());
+            progress.addProperty("total", snapshot.total());
+            progress.addProperty("files", snapshot.files());
+            progress.addProperty("bytesPerSecond", (long) snapshot.bytesPerSecond());
+            progress.addProperty("etaSeconds", snapshot.etaSeconds());
+            emit(progress);
+        }
+    }
+}
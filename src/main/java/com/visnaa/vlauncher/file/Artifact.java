@@ -0,0 +1,7 @@
+package com.visnaa.vlauncher.file;
+
+import java.nio.file.Path;
+
+public record Artifact(String name, Path path, String url, int size, String sha1)
+{
+}
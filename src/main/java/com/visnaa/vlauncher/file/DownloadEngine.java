@@ -0,0 +1,206 @@
+package com.visnaa.vlauncher.file;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class DownloadEngine
+{
+    public static final int DEFAULT_WORKERS = 16;
+    public static final int SMALL_FILE_SIZE = 64 * 1024;
+    public static final int BATCH_FILES = 32;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final PriorityBlockingQueue<Task> queue = new PriorityBlockingQueue<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<Path, CompletableFuture<File>> pending = new ConcurrentHashMap<>();
+    private final int workerCount;
+    private final VerificationIndex verificationIndex;
+    private final ObjectStore objectStore;
+
+    public DownloadEngine(int workers, VerificationIndex verificationIndex)
+    {
+        this(workers, verificationIndex, null);
+    }
+
+    public DownloadEngine(int workers, VerificationIndex verificationIndex, ObjectStore objectStore)
+    {
+        this.verificationIndex = verificationIndex;
+        this.objectStore = objectStore;
+        this.workerCount = Math.max(1, workers);
+        for (int i = 0; i < workerCount; i++)
+            executor.execute(this::work);
+    }
+
+    /**
+     * Queues the artifacts in the given order. Files smaller than {@link #SMALL_FILE_SIZE} are grouped into batches to
+     * keep the queue short, sized so that every worker still gets a batch and never larger than {@link #BATCH_FILES}.
+     * A file that is already queued, for example a library shared by two versions installed at once, is only fetched
+     * once.
+     */
+    public List<CompletableFuture<File>> submitAll(List<Artifact> artifacts, Priority priority, DownloadListener listener)
+    {
+        long smallFiles = artifacts.stream().filter(artifact -> artifact.size() < SMALL_FILE_SIZE).count();
+        int batchSize = (int) Math.max(1, Math.min(BATCH_FILES, (smallFiles + workerCount - 1) / workerCount));
+        List<CompletableFuture<File>> futures = new ArrayList<>(artifacts.size());
+        List<Artifact> batch = new ArrayList<>(batchSize);
+        List<CompletableFuture<File>> batchFutures = new ArrayList<>(batchSize);
+        for (Artifact artifact : artifacts)
+        {
+            CompletableFuture<File> future = new CompletableFuture<>();
+            CompletableFuture<File> existing = pending.putIfAbsent(artifact.path(), future);
+            if (existing != null)
+            {
+                futures.add(existing.thenApply(file -> {
+                    listener.fileFinished(artifact);
+                    return file;
+                }));
+                continue;
+            }
+            future.whenComplete((_, _) -> pending.remove(artifact.path(), future));
+            futures.add(future);
+
+            if (artifact.size() >= SMALL_FILE_SIZE)
+            {
+                queue.add(new Task(priority, sequence.getAndIncrement(), List.of(artifact), List.of(future), listener));
+                continue;
+            }
+
+            batch.add(artifact);
+            batchFutures.add(future);
+            if (batch.size() == batchSize)
+            {
+                queue.add(new Task(priority, sequence.getAndIncrement(), List.copyOf(batch), List.copyOf(batchFutures), listener));
+                batch.clear();
+                batchFutures.clear();
+            }
+        }
+        if (!batch.isEmpty())
+            queue.add(new Task(priority, sequence.getAndIncrement(), List.copyOf(batch), List.copyOf(batchFutures), listener));
+        return futures;
+    }
+
+    public List<File> downloadAll(List<Artifact> artifacts)
+    {
+        return downloadAll(artifacts, Priority.NORMAL, DownloadListener.NONE);
+    }
+
+    public List<File> downloadAll(List<Artifact> artifacts, Priority priority, DownloadListener listener)
+    {
+        return join(submitAll(artifacts, priority, listener));
+    }
+
+    public static List<File> join(List<CompletableFuture<File>> futures)
+    {
+        try
+        {
+            CompletableFuture.allOf(futures.toArray(CompletableFuture<?>[]::new)).join();
+        }
+        catch (CompletionException e)
+        {
+            throw e.getCause() instanceof RuntimeException runtime ? runtime : new RuntimeException(e.getCause());
+        }
+
+        List<File> files = new ArrayList<>(futures.size());
+        futures.forEach(future -> files.add(future.join()));
+        return files;
+    }
+
+    private void work()
+    {
+        try
+        {
+            while (!Thread.currentThread().isInterrupted())
+            {
+                Task task = queue.take();
+                for (int i = 0; i < task.artifacts().size(); i++)
+                {
+                    // Hand the rest of a batch back when more urgent work is waiting
+                    Task next = queue.peek();
+                    if (i > 0 && next != null && next.priority().compareTo(task.priority()) < 0)
+                    {
+                        int size = task.artifacts().size();
+                        queue.add(new Task(task.priority(), task.sequence(), task.artifacts().subList(i, size), task.futures().subList(i, size), task.listener()));
+                        break;
+                    }
+
+                    Artifact artifact = task.artifacts().get(i);
+                    try
+                    {
+                        task.listener().fileStarted(artifact);
+                        File file = fetch(artifact);
+                        task.listener().fileFinished(artifact);
+                        task.futures().get(i).complete(file);
+                    }
+                    catch (Throwable e)
+                    {
+                        task.futures().get(i).completeExceptionally(e);
+                    }
+                }
+            }
+        }
+        catch (InterruptedException ignored)
+        {
+        }
+    }
+
+    private File fetch(Artifact artifact) throws Exception
+    {
+        // Another download may have finished this file after it was planned
+        if (Files.exists(artifact.path()) && FileHelper.isValid(artifact.path(), artifact.size(), artifact.sha1(), verificationIndex))
+            return artifact.path().toFile();
+
+        if (objectStore != null && objectStore.materialize(artifact))
+        {
+            if (verificationIndex != null)
+                verificationIndex.record(artifact.path(), artifact.sha1());
+            return artifact.path().toFile();
+        }
+
+        File file = FileHelper.fetchToFile(artifact.path(), artifact.url(), artifact.size(), artifact.sha1(), verificationIndex);
+        if (objectStore != null)
+            objectStore.add(artifact);
+        return file;
+    }
+
+    public int getWorkerCount()
+    {
+        return workerCount;
+    }
+
+    public int getQueuedTasks()
+    {
+        return queue.size();
+    }
+
+    public void shutdown()
+    {
+        executor.shutdownNow();
+    }
+
+    // Launch-critical files first, then regular assets, then large sounds and music
+    public enum Priority
+    {
+        CRITICAL, NORMAL, BACKGROUND
+    }
+
+    private record Task(Priority priority, long sequence, List<Artifact> artifacts, List<CompletableFuture<File>> futures, DownloadListener listener) implements Comparable<Task>
+    {
+        @Override
+        public int compareTo(Task other)
+        {
+            int order = priority.compareTo(other.priority);
+            return order != 0 ? order : Long.compare(sequence, other.sequence);
+        }
+    }
+}
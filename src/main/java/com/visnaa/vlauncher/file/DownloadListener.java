@@ -0,0 +1,33 @@
+package com.visnaa.vlauncher.file;
+
+/**
+ * Receives progress from a {@link Downloader}, so the download core can run with the GUI, headless or not reporting
+ * at all.
+ */
+public interface DownloadListener
+{
+    DownloadListener NONE = new DownloadListener() {};
+
+    default void status(String status)
+    {
+    }
+
+    // More bytes to download were discovered
+    default void extendTotal(long bytes)
+    {
+    }
+
+    default void progress(long bytes)
+    {
+    }
+
+    default void fileStarted(Artifact artifact)
+    {
+        status("Downloading " + artifact.name());
+    }
+
+    default void fileFinished(Artifact artifact)
+    {
+        progress(artifact.size());
+    }
+}
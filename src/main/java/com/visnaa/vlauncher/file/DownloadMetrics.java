@@ -0,0 +1,247 @@
+package com.visnaa.vlauncher.file;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class DownloadMetrics
+{
+    private static final DownloadMetrics INSTANCE = new DownloadMetrics();
+
+    private volatile long startTime = System.nanoTime();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder files = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder verifiedBytes = new LongAdder();
+    private final LongAdder verificationNanos = new LongAdder();
+    private final LongAdder verificationFailures = new LongAdder();
+    private final Map<String, HostMetrics> hosts = new ConcurrentHashMap<>();
+    // Survives reset so hedging keeps the latency history of earlier runs
+    private final Map<String, LatencyHistogram> latencyHistory = new ConcurrentHashMap<>();
+
+    public static DownloadMetrics get()
+    {
+        return INSTANCE;
+    }
+
+    public void reset()
+    {
+        startTime = System.nanoTime();
+        bytes.reset();
+        files.reset();
+        cacheHits.reset();
+        cacheMisses.reset();
+        verifiedBytes.reset();
+        verificationNanos.reset();
+        verificationFailures.reset();
+        hosts.clear();
+    }
+
+    public void recordBytes(long count)
+    {
+        bytes.add(count);
+    }
+
+    public void recordFile()
+    {
+        files.increment();
+    }
+
+    public void recordCache(boolean hit)
+    {
+        (hit ? cacheHits : cacheMisses).increment();
+    }
+
+    public void recordVerification(long size, long nanos)
+    {
+        verifiedBytes.add(size);
+        verificationNanos.add(nanos);
+    }
+
+    public void recordVerificationFailure()
+    {
+        verificationFailures.increment();
+    }
+
+    public void recordRequest(String url, long nanos)
+    {
+        host(url).latency.record(nanos);
+        getLatencyHistory(url).record(nanos);
+    }
+
+    public void recordFailure(String url)
+    {
+        host(url).failures.increment();
+    }
+
+    public void recordRetry(String url)
+    {
+        host(url).retries.increment();
+    }
+
+    public void recordHedge(String url)
+    {
+        host(url).hedges.increment();
+    }
+
+    public HostMetrics host(String url)
+    {
+        return hosts.computeIfAbsent(hostName(url), _ -> new HostMetrics());
+    }
+
+    public LatencyHistogram getLatencyHistory(String url)
+    {
+        return latencyHistory.computeIfAbsent(hostName(url), _ -> new LatencyHistogram());
+    }
+
+    private static String hostName(String url)
+    {
+        String host = URI.create(url).getHost();
+        return host == null ? url : host;
+    }
+
+    public double getBytesPerSecond()
+    {
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        return seconds <= 0 ? 0 : bytes.sum() / seconds;
+    }
+
+    public JsonObject toJson()
+    {
+        JsonObject json = new JsonObject();
+        json.addProperty("seconds", (System.nanoTime() - startTime) / 1e9);
+        json.addProperty("bytes", bytes.sum());
+        json.addProperty("files", files.sum());
+        json.addProperty("bytesPerSecond", getBytesPerSecond());
+        json.addProperty("cacheHits", cacheHits.sum());
+        json.addProperty("cacheMisses", cacheMisses.sum());
+        json.addProperty("verifiedBytes", verifiedBytes.sum());
+        json.addProperty("verificationSeconds", verificationNanos.sum() / 1e9);
+        json.addProperty("verificationFailures", verificationFailures.sum());
+
+        JsonObject hostsJson = new JsonObject();
+        new TreeMap<>(hosts).forEach((host, metrics) -> hostsJson.add(host, metrics.toJson()));
+        json.add("hosts", hostsJson);
+        return json;
+    }
+
+    public String getSummary()
+    {
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format("Downloaded %d files, %.2f MB at %.2f MB/s%n", files.sum(), bytes.sum() / 1_048_576D, getBytesPerSecond() / 1_048_576D));
+        summary.append(String.format("Existing files: %d valid, %d missing or invalid%n", cacheHits.sum(), cacheMisses.sum()));
+        summary.append(String.format("Verified %.2f MB in %.2f s, %d verification failures%n", verifiedBytes.sum() / 1_048_576D, verificationNanos.sum() / 1e9, verificationFailures.sum()));
+        new TreeMap<>(hosts).forEach((host, metrics) -> summary.append(String.format("%s: %d requests, p50 %d ms, p95 %d ms, max %d ms, %d failures, %d retries, %d hedges%n",
+                host, metrics.latency.getCount(), metrics.latency.getPercentileMillis(0.5), metrics.latency.getPercentileMillis(0.95), metrics.latency.getMaxMillis(), metrics.failures.sum(), metrics.retries.sum(), metrics.hedges.sum())));
+        return summary.toString();
+    }
+
+    public Path export(Path directory)
+    {
+        Path path = directory.resolve("metrics-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".json");
+        FileHelper.saveJsonConfigFile(toJson(), path.toString());
+        return path;
+    }
+
+    public static class HostMetrics
+    {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder hedges = new LongAdder();
+
+        public LatencyHistogram getLatency()
+        {
+            return latency;
+        }
+
+        private JsonObject toJson()
+        {
+            JsonObject json = new JsonObject();
+            json.addProperty("requests", latency.getCount());
+            json.addProperty("failures", failures.sum());
+            json.addProperty("retries", retries.sum());
+            json.addProperty("hedges", hedges.sum());
+            json.addProperty("meanMillis", latency.getMeanMillis());
+            json.addProperty("p50Millis", latency.getPercentileMillis(0.5));
+            json.addProperty("p95Millis", latency.getPercentileMillis(0.95));
+            json.addProperty("p99Millis", latency.getPercentileMillis(0.99));
+            json.addProperty("maxMillis", latency.getMaxMillis());
+            json.add("histogram", latency.toJson());
+            return json;
+        }
+    }
+
+    // Bucket i counts latencies below 2^i ms
+    public static class LatencyHistogram
+    {
+        private static final int BUCKETS = 20;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sumNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        public void record(long nanos)
+        {
+            long millis = nanos / 1_000_000;
+            int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(millis));
+            buckets.incrementAndGet(bucket);
+            count.increment();
+            sumNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        public long getCount()
+        {
+            return count.sum();
+        }
+
+        public double getMeanMillis()
+        {
+            long count = this.count.sum();
+            return count == 0 ? 0 : sumNanos.sum() / 1e6 / count;
+        }
+
+        public long getMaxMillis()
+        {
+            return maxNanos.get() / 1_000_000;
+        }
+
+        public long getPercentileMillis(double percentile)
+        {
+            long count = this.count.sum();
+            if (count == 0)
+                return 0;
+
+            long target = (long) Math.ceil(count * percentile);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++)
+            {
+                seen += buckets.get(i);
+                if (seen >= target)
+                    return Math.min(1L << i, getMaxMillis());
+            }
+            return getMaxMillis();
+        }
+
+        private JsonArray toJson()
+        {
+            JsonArray json = new JsonArray();
+            for (int i = 0; i < BUCKETS; i++)
+                json.add(buckets.get(i));
+            return json;
+        }
+    }
+}
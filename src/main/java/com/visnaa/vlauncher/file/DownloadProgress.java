@@ -0,0 +1,85 @@
+package com.visnaa.vlauncher.file;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Progress of one install that download workers update without locking or touching the GUI. Readers call
+ * {@link #sample()} at their own pace, which smooths the throughput across samples to estimate the time left.
+ */
+public class DownloadProgress implements DownloadListener
+{
+    private static final double RATE_TIME_CONSTANT_SECONDS = 3;
+
+    private final LongAdder done = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAdder files = new LongAdder();
+    private volatile String status = "";
+    private long lastSampleTime = System.nanoTime();
+    private long lastSampleBytes;
+    private double bytesPerSecond;
+
+    @Override
+    public void status(String status)
+    {
+        this.status = status;
+    }
+
+    @Override
+    public void extendTotal(long bytes)
+    {
+        total.add(bytes);
+    }
+
+    @Override
+    public void progress(long bytes)
+    {
+        done.add(bytes);
+    }
+
+    @Override
+    public void fileFinished(Artifact artifact)
+    {
+        files.increment();
+        progress(artifact.size());
+    }
+
+    public synchronized Snapshot sample()
+    {
+        long now = System.nanoTime();
+        long bytes = done.sum();
+        double seconds = (now - lastSampleTime) / 1e9;
+        if (seconds > 0)
+        {
+            // Exponential moving average, weighted by the time since the last sample so the frame rate does not matter
+            double rate = Math.max(0, bytes - lastSampleBytes) / seconds;
+            double weight = lastSampleBytes == 0 && bytesPerSecond == 0 ? 1 : 1 - Math.exp(-seconds / RATE_TIME_CONSTANT_SECONDS);
+            bytesPerSecond += (rate - bytesPerSecond) * weight;
+            lastSampleTime = now;
+            lastSampleBytes = bytes;
+        }
+
+        long totalBytes = Math.max(total.sum(), bytes);
+        long eta = bytesPerSecond >= 1 ? (long) Math.ceil((totalBytes - bytes) / bytesPerSecond) : -1;
+        return new Snapshot(status, bytes, totalBytes, files.sum(), bytesPerSecond, eta);
+    }
+
+    /**
+     * @param etaSeconds seconds until {@code total} is reached at the current rate, or -1 while the rate is unknown
+     */
+    public record Snapshot(String status, long done, long total, long files, double bytesPerSecond, long etaSeconds)
+    {
+        public double fraction()
+        {
+            return total == 0 ? 0 : (double) done / total;
+        }
+
+        public String formatEta()
+        {
+            if (etaSeconds < 0)
+                return "--:--";
+            if (etaSeconds >= 3600)
+                return String.format("%d:%02d:%02d", etaSeconds / 3600, etaSeconds / 60 % 60, etaSeconds % 60);
+            return String.format("%d:%02d", etaSeconds / 60, etaSeconds % 60);
+        }
+    }
+}
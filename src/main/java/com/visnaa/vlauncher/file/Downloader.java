@@ -1,87 +1,199 @@
 package com.visnaa.vlauncher.file;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
-import com.visnaa.vlauncher.Main;
+import com.visnaa.vlauncher.minecraft.AssetIndex;
+import com.visnaa.vlauncher.minecraft.LaunchPipeline;
+import com.visnaa.vlauncher.minecraft.LaunchPlan;
+import com.visnaa.vlauncher.minecraft.VersionData;
+import com.visnaa.vlauncher.minecraft.VersionManifest;
 
-import javax.swing.*;
 import java.io.File;
 import java.io.IOException;
+import java.io.StringReader;
 import java.net.HttpURLConnection;
-import java.net.URI;
-import java.net.URL;
-import java.net.URLConnection;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
 
 public class Downloader
 {
     private final Path rootDirectory;
-    private JsonObject versionManifest;
-    private JsonObject versionData;
-    private JsonObject assetIndex;
+    private VersionManifest versionManifest;
+    private VersionData versionData;
+    private AssetIndex assetIndex;
     private String os;
-    private List<File> libraries = new ArrayList<>();
-    private List<File> natives = new ArrayList<>();
+    private List<Artifact> classpath = List.of();
     private String versionId;
     private String versionType;
     private String assetsVersion;
     private String mainClass;
-    private String gameArguments;
-    private String jvmArguments;
     private Path runPath;
+    private LaunchPlan launchPlan;
+    private boolean launchPlanCacheable;
     private File java;
-
-    private final HashMap<Integer, String> javaVersions = new HashMap<>();
+    private final DownloadEngine downloadEngine;
+    private volatile InstallPlan installPlan;
+    private volatile Set<Artifact> backgroundAssets = Set.of();
+    private Path nativesDirectory;
+    private final VerificationIndex verificationIndex;
+    private final MetadataCache metadataCache;
+    private final NativesCache nativesCache;
+    private final LaunchPlanCache launchPlanCache;
+    private final ObjectStore objectStore;
+    private DownloadListener listener = DownloadListener.NONE;
+
+    private final HashMap<Integer, String> javaVersions;
 
     public Downloader(String path)
     {
+        this(path, DownloadEngine.DEFAULT_WORKERS);
+    }
+
+    public Downloader(String path, int downloadWorkers)
+    {
+        this(Path.of(path), downloadWorkers, null);
+    }
+
+    public Downloader(Path path, int downloadWorkers, ObjectStore objectStore)
+    {
+        javaVersions = new HashMap<>();
         javaVersions.put(8, "https://github.com/adoptium/temurin8-binaries/releases/download/jdk8u442-b06/OpenJDK8U-jdk_x64_windows_hotspot_8u442b06.zip");
         javaVersions.put(16, "https://github.com/adoptium/temurin16-binaries/releases/download/jdk-16.0.2%2B7/OpenJDK16U-jdk_x64_windows_hotspot_16.0.2_7.zip");
         javaVersions.put(17, "https://github.com/adoptium/temurin17-binaries/releases/download/jdk-17.0.14%2B7/OpenJDK17U-jdk_x64_windows_hotspot_17.0.14_7.zip");
         javaVersions.put(21, "https://github.com/adoptium/temurin21-binaries/releases/download/jdk-21.0.6%2B7/OpenJDK21U-jdk_x64_windows_hotspot_21.0.6_7.zip");
 
-        rootDirectory = Path.of(path);
-        loadVersionManifest();
+        rootDirectory = path;
+        this.objectStore = objectStore;
+        if (objectStore != null)
+            objectStore.registerRoot(rootDirectory);
+        verificationIndex = new VerificationIndex(rootDirectory);
+        metadataCache = new MetadataCache(verificationIndex);
+        nativesCache = new NativesCache(rootDirectory.resolve("natives"));
+        launchPlanCache = new LaunchPlanCache(rootDirectory);
+        downloadEngine = new DownloadEngine(downloadWorkers, verificationIndex, objectStore);
+    }
+
+    // Shares the root directory, caches and download workers, but tracks its own version
+    private Downloader(Downloader parent)
+    {
+        javaVersions = parent.javaVersions;
+        rootDirectory = parent.rootDirectory;
+        objectStore = parent.objectStore;
+        verificationIndex = parent.verificationIndex;
+        metadataCache = parent.metadataCache;
+        nativesCache = parent.nativesCache;
+        launchPlanCache = parent.launchPlanCache;
+        downloadEngine = parent.downloadEngine;
+        versionManifest = parent.versionManifest;
+        listener = parent.listener;
+    }
+
+    /**
+     * Creates a downloader for installing another version into the same root at the same time. Files that both
+     * versions need are only downloaded once.
+     */
+    public Downloader fork()
+    {
+        return new Downloader(this);
+    }
+
+    public void shutdown()
+    {
+        downloadEngine.shutdown();
+    }
+
+    public void setListener(DownloadListener listener)
+    {
+        this.listener = listener;
+    }
+
+    public LaunchPipeline createInstallPipeline(String version, boolean runtime)
+    {
+        return new LaunchPipeline()
+                .add("manifest", () -> {
+                    if (!hasVersionManifest())
+                        loadVersionManifest();
+                })
+                .add("version", () -> {
+                    setVersion(version);
+                    loadVersionData();
+                }, "manifest")
+                .add("plan", () -> {
+                    InstallPlan plan = planInstall();
+                    if (plan != null)
+                        listener.extendTotal(plan.getMissingBytes());
+                }, "version")
+                .add("runtime", runtime ? this::downloadJava : () -> {}, "plan")
+                .add("client", this::downloadVersion, "plan")
+                .add("libraries", this::downloadLibraries, "plan")
+                .add("assetIndex", this::loadAssetIndex, "version")
+                .add("objects", this::downloadObjects, "assetIndex", "plan")
+                .add("natives", this::prepareNatives, "libraries")
+                .add("store", this::importIntoStore, "client", "libraries", "objects");
+    }
+
+    public boolean hasVersionManifest()
+    {
+        return versionManifest != null;
     }
 
     public void loadVersionManifest()
     {
-        versionManifest = JsonParser.parseString(FileHelper.getHttpTextResource("https://piston-meta.mojang.com/mc/game/version_manifest.json")).getAsJsonObject();
+        versionManifest = VersionManifest.parse(new StringReader(metadataCache.fetch("https://piston-meta.mojang.com/mc/game/version_manifest_v2.json", rootDirectory.resolve("versions").resolve("version_manifest_v2.json"))));
+    }
+
+    public VersionManifest getVersionManifest()
+    {
+        return versionManifest;
     }
 
     public String getLatestRelease()
     {
-        return versionManifest.getAsJsonObject("latest").get("release").getAsString();
+        return versionManifest.getLatestRelease();
     }
 
     public List<String> getVersions()
     {
-        List<String> versions = new ArrayList<>();
-        versionManifest.getAsJsonArray("versions").forEach(version -> versions.addLast(version.getAsJsonObject().get("id").getAsString()));
-        return versions;
+        return versionManifest.getIds();
     }
 
     public void setVersion(String version)
     {
-        String url = null;
-        for (JsonElement v : versionManifest.getAsJsonArray("versions"))
-        {
-            if (v.getAsJsonObject().get("id").getAsString().equals(version))
-                url = v.getAsJsonObject().get("url").getAsString();
-        }
+        LaunchPhaseEvent event = LaunchPhaseEvent.start("setVersion");
+        VersionManifest.Entry entry = versionManifest != null ? versionManifest.get(version) : null;
 
-        if (url == null || url.isEmpty())
-            JOptionPane.showMessageDialog(Main.getInstance().getGuiManager().getFrame(), "Could not find version " + version, "Error", JOptionPane.ERROR_MESSAGE);
-        else
+        Path path = rootDirectory.resolve("versions").resolve(version).resolve(version + ".json");
+        if (entry != null && entry.url() != null && !entry.url().isEmpty())
+            versionData = VersionData.parse(new StringReader(metadataCache.fetch(entry.url(), path, -1, entry.sha1())));
+        else if (path.toFile().exists())
         {
-            versionData = JsonParser.parseString(FileHelper.getHttpTextResource(url)).getAsJsonObject();
-            FileHelper.downloadToFile(rootDirectory.resolve("versions").resolve(versionData.get("id").getAsString()).resolve(versionData.get("id").getAsString() + ".json"), url);
+            try
+            {
+                versionData = VersionData.parse(Files.newBufferedReader(path));
+            }
+            catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
         }
+        else
+            throw new IllegalArgumentException("Could not find version " + version);
+        event.finish(version, 1, path.toFile().length());
+    }
+
+    void useVersionData(VersionData versionData, Path nativesDirectory)
+    {
+        this.versionData = versionData;
+        this.nativesDirectory = nativesDirectory;
+        loadVersionData();
     }
 
     public void loadVersionData()
@@ -89,10 +201,10 @@ public class Downloader
         if (versionData == null)
             return;
 
-        versionId = versionData.get("id").getAsString();
-        versionType = versionData.get("type").getAsString();
-        assetsVersion = versionData.get("assets").getAsString();
-        mainClass = versionData.get("mainClass").getAsString();
+        versionId = versionData.id();
+        versionType = versionData.type();
+        assetsVersion = versionData.assets();
+        mainClass = versionData.mainClass();
 
         String osName = System.getProperty("os.name");
         if (osName.contains("Windows"))
@@ -108,70 +220,196 @@ public class Downloader
         if (versionData == null)
             return;
 
-        String assetsPath = versionData.getAsJsonObject("assetIndex").get("url").getAsString();
-        int assetsSize = versionData.getAsJsonObject("assetIndex").get("size").getAsInt();
-        String assetsSha1 = versionData.getAsJsonObject("assetIndex").get("sha1").getAsString();
-        String assetsIndex = versionData.getAsJsonObject("assetIndex").get("id").getAsString();
-
-        assetIndex = JsonParser.parseString(FileHelper.getHttpTextResource(assetsPath)).getAsJsonObject().getAsJsonObject("objects");
-        FileHelper.downloadToFile(rootDirectory.resolve("assets").resolve("indexes").resolve(assetsIndex + ".json"), assetsPath, assetsSize, assetsSha1);
+        LaunchPhaseEvent event = LaunchPhaseEvent.start("loadAssetIndex");
+        VersionData.AssetIndex index = versionData.assetIndex();
+        assetIndex = AssetIndex.parse(new StringReader(metadataCache.fetch(index.url(), rootDirectory.resolve("assets").resolve("indexes").resolve(index.id() + ".json"), index.size(), index.sha1())));
+        event.finish(versionId, assetIndex.size(), index.size());
     }
 
-    public long getEstimatedSize()
+    public InstallPlan planInstall()
     {
         if (versionData == null)
-            return Integer.MAX_VALUE;
+            return null;
 
-        long totalSize = 0;
+        int javaVersion = versionData.javaVersion();
+        boolean runtimeMissing = !rootDirectory.resolve("runtime").resolve("jdk-" + javaVersion + ".zip").toFile().exists();
 
-        // Java
-        if (versionData.has("javaVersion"))
-            totalSize += FileHelper.getHttpFileSize(javaVersions.get(versionData.getAsJsonObject("javaVersion").get("majorVersion").getAsInt()));
-        else
-            totalSize += FileHelper.getHttpFileSize(javaVersions.get(8));
-
-        // Version jar
-        totalSize += versionData.getAsJsonObject("downloads").getAsJsonObject("client").get("size").getAsInt();
-
-        // Libraries
-        AtomicLong librariesSize = new AtomicLong(0);
-        versionData.getAsJsonArray("libraries").asList().stream().map(JsonElement::getAsJsonObject).forEach(library -> {
-            if (library.getAsJsonObject("downloads").has("artifact"))
-                librariesSize.addAndGet(library.getAsJsonObject("downloads").getAsJsonObject("artifact").get("size").getAsInt());
-            if (library.getAsJsonObject("downloads").has("classifiers") && library.getAsJsonObject("downloads").getAsJsonObject("classifiers").has("natives-" + (os.equals("macos") ? "osx" : os)))
-                librariesSize.addAndGet(library.getAsJsonObject("downloads").getAsJsonObject("classifiers").getAsJsonObject("natives-" + (os.equals("macos") ? "osx" : os)).get("size").getAsInt());
-        });
-        totalSize += librariesSize.get();
+        String version = versionData.id();
+        VersionData.Download clientDownload = versionData.client();
+        Artifact client = new Artifact("Minecraft version " + version, rootDirectory.resolve("versions").resolve(version).resolve(version + ".jar"), clientDownload.url(), clientDownload.size(), clientDownload.sha1());
+
+        String osName = os.equals("macos") ? "osx" : os;
+        String arch = System.getProperty("os.arch").contains("64") ? "64" : "32";
+        List<Artifact> classpath = new ArrayList<>();
+        List<Artifact> classifiers = new ArrayList<>();
+        for (VersionData.Library library : versionData.libraries())
+        {
+            if (library.artifact() != null)
+                classpath.add(toArtifact("library: " + library.name(), rootDirectory.resolve("libraries"), library.artifact()));
+
+            if (!library.classifiers().containsKey("natives-" + osName) || !library.natives().containsKey(osName))
+                continue;
+
+            String natives = library.natives().get(osName).replace("${os_arch}", arch);
+            VersionData.Download classifier = library.classifiers().get(natives);
+            if (classifier != null)
+                classifiers.add(toArtifact("library: " + library.name() + " (" + natives + ")", rootDirectory.resolve("libraries"), classifier));
+        }
 
-        // Assets
-        AtomicLong assetsSize = new AtomicLong(0);
-        assetIndex.asMap().forEach((_, asset) -> assetsSize.addAndGet(asset.getAsJsonObject().get("size").getAsInt()));
-        totalSize += assetsSize.get();
+        this.classpath = classpath;
+        List<Artifact> libraries = new ArrayList<>(classpath);
+        libraries.addAll(classifiers);
+        List<Artifact> natives = new ArrayList<>();
+        for (Artifact library : classpath)
+        {
+            String fileName = library.path().getFileName().toString();
+            if (fileName.endsWith("natives-" + os + ".jar") || fileName.endsWith("natives-" + os + "-" + arch + ".jar"))
+                natives.add(library);
+        }
+        natives.addAll(classifiers);
+
+        installPlan = new InstallPlan(javaVersion, runtimeMissing, client, !missing(List.of(client)).isEmpty(), libraries, natives, missing(libraries), List.of(), List.of());
+        System.out.println("Install plan for " + version + ": " + installPlan);
+        return installPlan;
+    }
+
+    public InstallPlan planAssets()
+    {
+        if (installPlan == null || assetIndex == null)
+            return installPlan;
+
+        List<Artifact> assets = new ArrayList<>(assetIndex.size());
+        Set<Artifact> background = new HashSet<>();
+        for (int i = 0; i < assetIndex.size(); i++)
+        {
+            String name = assetIndex.getName(i);
+            String sha1 = assetIndex.getHash(i);
+            int size = assetIndex.getSize(i);
+            String location = sha1.substring(0, 2) + "/" + sha1;
+            Artifact artifact = new Artifact("asset: " + name + ", hash: " + sha1, rootDirectory.resolve("assets").resolve("objects").resolve(location), "https://resources.download.minecraft.net/" + location, size, sha1);
+            assets.add(artifact);
+            if (isBackgroundAsset(name, size))
+                background.add(artifact);
+        }
+
+        List<Artifact> missingAssets = missing(assets);
+        backgroundAssets = background;
+        installPlan = installPlan.withAssets(assets, missingAssets);
+        System.out.println("Asset plan for " + assetsVersion + ": " + missingAssets.size() + " of " + assets.size() + " objects missing");
+        return installPlan;
+    }
 
-        return totalSize;
+    // Sounds and music are not needed to reach the title screen, so large ones are fetched last
+    private static boolean isBackgroundAsset(String name, int size)
+    {
+        String path = name.startsWith("minecraft/") ? name.substring("minecraft/".length()) : name;
+        return size >= DownloadEngine.SMALL_FILE_SIZE && (path.startsWith("sounds/") || path.startsWith("music/"));
+    }
+
+    public List<Artifact> getInstallArtifacts()
+    {
+        if (planInstall() == null)
+            return List.of();
+
+        InstallPlan plan = planAssets();
+        List<Artifact> artifacts = new ArrayList<>(1 + plan.libraries().size() + plan.assets().size());
+        artifacts.add(plan.client());
+        artifacts.addAll(plan.libraries());
+        artifacts.addAll(plan.assets());
+        return artifacts;
+    }
+
+    public IntegrityVerifier.Report verifyAndRepair(List<Artifact> artifacts)
+    {
+        IntegrityVerifier verifier = new IntegrityVerifier(verificationIndex, downloadEngine, objectStore);
+        verifier.setListener(listener);
+        return verifier.verifyAndRepair(artifacts);
+    }
+
+    // Repairs the installation first so the bundle only ever contains verified files
+    public InstallBundle.Report exportBundle(Path bundle)
+    {
+        List<Artifact> artifacts = getInstallArtifacts();
+        verifyAndRepair(artifacts);
+        downloadJava();
+
+        List<Path> files = new ArrayList<>();
+        files.add(rootDirectory.resolve("versions").resolve(versionId).resolve(versionId + ".json"));
+        files.add(rootDirectory.resolve("assets").resolve("indexes").resolve(versionData.assetIndex().id() + ".json"));
+        Path runtime = rootDirectory.resolve("runtime").resolve("jdk-" + installPlan.javaVersion() + ".zip");
+        if (runtime.toFile().exists())
+            files.add(runtime);
+        return new InstallBundle(rootDirectory).export(bundle, versionId, artifacts, files);
+    }
+
+    public InstallBundle.Report importBundle(Path bundle)
+    {
+        InstallBundle installBundle = new InstallBundle(rootDirectory);
+        installBundle.setProgressListener(artifact -> listener.progress(artifact.size()));
+        return installBundle.importBundle(bundle, verificationIndex, objectStore);
+    }
+
+    private boolean isInstalled(Artifact artifact)
+    {
+        try
+        {
+            return FileHelper.isValid(artifact.path(), artifact.size(), artifact.sha1(), verificationIndex);
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private List<Artifact> missing(List<Artifact> artifacts)
+    {
+        return artifacts.parallelStream().filter(artifact -> !isInstalled(artifact)).toList();
+    }
+
+    // Shares the files that were installed before the store was set up, downloads add their own files as they go
+    public void importIntoStore()
+    {
+        if (objectStore == null || installPlan == null)
+            return;
+
+        // Runs after the downloads, so every planned file is installed by now
+        objectStore.importOnce(rootDirectory, () -> {
+            List<Artifact> installed = new ArrayList<>(1 + installPlan.libraries().size() + installPlan.assets().size());
+            installed.add(installPlan.client());
+            installed.addAll(installPlan.libraries());
+            installed.addAll(installPlan.assets());
+            return installed;
+        });
     }
 
     public void downloadJava()
     {
-        if (versionData == null)
+        if (installPlan == null)
             return;
 
-        int javaVersion;
-        if (versionData.has("javaVersion"))
-            javaVersion = versionData.getAsJsonObject("javaVersion").get("majorVersion").getAsInt();
-        else
-            javaVersion = 8;
+        LaunchPhaseEvent event = LaunchPhaseEvent.start("downloadJava");
+        int javaVersion = installPlan.javaVersion();
         String url = javaVersions.get(javaVersion);
 
-        Main.getInstance().getGuiManager().setLoadingText("Downloading Java " + javaVersion);
-        System.out.println("Downloading Java " + javaVersion);
-
         Path destination = rootDirectory.resolve("runtime").resolve("jdk-" + javaVersion + ".zip");
-        if (!rootDirectory.resolve("runtime").resolve("jdk-" + javaVersion + ".zip").toFile().exists())
-            FileHelper.downloadToFile(destination, url);
-        if (!FileHelper.extractZip(rootDirectory.resolve("runtime").resolve("jdk-" + javaVersion + ".zip").toFile(), rootDirectory.resolve("runtime").resolve("jdk-" + javaVersion)))
+        boolean extracted;
+        // Forks installing into the same root take turns, so a runtime is only downloaded and extracted once
+        synchronized (javaVersions)
+        {
+            if (installPlan.runtimeMissing() && !destination.toFile().exists())
+            {
+                listener.status("Downloading Java " + javaVersion);
+                System.out.println("Downloading Java " + javaVersion);
+                SegmentedDownload.download(destination, url);
+                long size = destination.toFile().length();
+                listener.extendTotal(size);
+                listener.progress(size);
+            }
+            extracted = FileHelper.extractZip(destination.toFile(), rootDirectory.resolve("runtime").resolve("jdk-" + javaVersion));
+        }
+        event.finish(versionId, installPlan.runtimeMissing() ? 1 : 0, installPlan.runtimeMissing() ? destination.toFile().length() : 0);
+        if (!extracted)
             return;
-        Main.getInstance().getGuiManager().progressLoading(FileHelper.getHttpFileSize(url));
 
         for (File javaDir : rootDirectory.resolve("runtime").resolve("jdk-" + javaVersion).toFile().listFiles(File::isDirectory))
         {
@@ -185,84 +423,82 @@ public class Downloader
 
     public void downloadVersion()
     {
-        if (versionData == null)
+        if (installPlan == null)
             return;
 
-        String version = versionData.get("id").getAsString();
-        String versionUrl = versionData.getAsJsonObject("downloads").getAsJsonObject("client").get("url").getAsString();
-        int versionSize = versionData.getAsJsonObject("downloads").getAsJsonObject("client").get("size").getAsInt();
-        String versionSha1 = versionData.getAsJsonObject("downloads").getAsJsonObject("client").get("sha1").getAsString();
+        Artifact client = installPlan.client();
+        if (!installPlan.clientMissing())
+            return;
 
-        Main.getInstance().getGuiManager().setLoadingText("Downloading Minecraft version " + version);
-        System.out.println("Downloading Minecraft version " + version);
-        FileHelper.downloadToFile(rootDirectory.resolve("versions").resolve(version).resolve(version + ".jar"), versionUrl, versionSize, versionSha1);
-        Main.getInstance().getGuiManager().progressLoading(versionSize);
+        LaunchPhaseEvent event = LaunchPhaseEvent.start("downloadVersion");
+        listener.status("Downloading " + client.name());
+        if (objectStore != null && objectStore.materialize(client))
+            verificationIndex.record(client.path(), client.sha1());
+        else
+        {
+            System.out.println("Downloading " + client.name());
+            SegmentedDownload.download(client.path(), client.url(), client.size(), client.sha1(), SegmentedDownload.DEFAULT_CONNECTIONS, verificationIndex);
+            if (objectStore != null)
+                objectStore.add(client);
+        }
+        listener.progress(client.size());
+        event.finish(versionId, 1, client.size());
     }
 
     public void downloadLibraries()
     {
-        if (versionData == null)
+        if (installPlan == null)
             return;
 
-        JsonArray libraries = versionData.getAsJsonArray("libraries");
-        libraries.asList().stream().map(JsonElement::getAsJsonObject).forEach(library -> {
-            String osName = os.equals("macos") ? "osx" : os;
-
-            JsonObject artifact = library.getAsJsonObject("downloads").getAsJsonObject("artifact");
-            if (artifact != null)
-            {
-                System.out.println("Downloading library: " + library.get("name").getAsString());
-                Main.getInstance().getGuiManager().setLoadingText("Downloading library: " + library.get("name").getAsString());
-
-                Path path = rootDirectory.resolve("libraries").resolve(artifact.get("path").getAsString());
-                File file = FileHelper.downloadToFile(path, artifact.get("url").getAsString(), artifact.get("size").getAsInt(), artifact.get("sha1").getAsString());
-                Main.getInstance().getGuiManager().progressLoading(artifact.get("size").getAsInt());
-                if (os.equals("windows"))
-                    this.libraries.add(file);
-
-                if (file.exists() && (file.getName().endsWith("natives-" + os + ".jar") || file.getName().endsWith("natives-" + os + (System.getProperty("os.arch").contains("64") ? "-64" : "-32") + ".jar")))
-                    natives.add(file);
-            }
-
-            if (library.getAsJsonObject("downloads").has("classifiers"))
-            {
-                if (!library.getAsJsonObject("downloads").getAsJsonObject("classifiers").has("natives-" + osName))
-                    return;
+        LaunchPhaseEvent event = LaunchPhaseEvent.start("downloadLibraries");
+        downloadEngine.downloadAll(installPlan.missingLibraries(), DownloadEngine.Priority.CRITICAL, listener);
+        event.finish(versionId, installPlan.missingLibraries().size(), InstallPlan.sizeOf(installPlan.missingLibraries()));
+    }
 
-                String natives = library.getAsJsonObject("natives").get(osName).getAsString().replace("${os_arch}", System.getProperty("os.arch").contains("64") ? "64" : "32");
-                JsonObject classifier = library.getAsJsonObject("downloads").getAsJsonObject("classifiers").getAsJsonObject(natives);
-                if (classifier == null)
-                    return;
+    public void prepareNatives()
+    {
+        if (installPlan == null)
+            return;
 
-                System.out.println("Downloading library: " + library.get("name").getAsString() + " (" + natives + ")");
-                Main.getInstance().getGuiManager().setLoadingText("Downloading library: " + library.get("name").getAsString() + " (" + natives + ")");
+        nativesDirectory = nativesCache.resolve(installPlan.natives(), getNativeExtensions());
+    }
 
-                Path path = rootDirectory.resolve("libraries").resolve(classifier.get("path").getAsString());
-                File file = FileHelper.downloadToFile(path, classifier.get("url").getAsString(), classifier.get("size").getAsInt(), classifier.get("sha1").getAsString());
-                Main.getInstance().getGuiManager().progressLoading(classifier.get("size").getAsInt());
-                if (os.equals("windows"))
-                    this.libraries.add(file);
+    private Set<String> getNativeExtensions()
+    {
+        return switch (os)
+        {
+            case "windows" -> Set.of("dll");
+            case "macos" -> Set.of("dylib", "jnilib");
+            default -> Set.of("so");
+        };
+    }
 
-                if (file.exists())
-                    this.natives.add(file);
-            }
-        });
+    private Artifact toArtifact(String name, Path directory, VersionData.Download download)
+    {
+        return new Artifact(name, directory.resolve(download.path()), download.url(), download.size(), download.sha1());
     }
 
     public void downloadObjects()
     {
-        if (versionData == null)
+        if (installPlan == null)
             return;
 
-        assetIndex.asMap().forEach((name, asset) -> {
-            String sha1 = asset.getAsJsonObject().get("hash").getAsString();
-            int size = asset.getAsJsonObject().get("size").getAsInt();
-            String location = sha1.substring(0, 2) + "/" + sha1;
-            Main.getInstance().getGuiManager().setLoadingText("Downloading asset: " + name + ", hash: " + sha1);
-            System.out.println("Downloading asset: " + name + ", hash: " + sha1);
-            FileHelper.downloadToFile(rootDirectory.resolve("assets").resolve("objects").resolve(location), "https://resources.download.minecraft.net/" + location, size, sha1);
-            Main.getInstance().getGuiManager().progressLoading(size);
-        });
+        LaunchPhaseEvent event = LaunchPhaseEvent.start("downloadObjects");
+        List<Artifact> missingAssets = planAssets().missingAssets();
+        long missingBytes = InstallPlan.sizeOf(missingAssets);
+        listener.extendTotal(missingBytes);
+
+        List<Artifact> regular = new ArrayList<>(missingAssets.size());
+        List<Artifact> background = new ArrayList<>();
+        for (Artifact asset : missingAssets)
+            (backgroundAssets.contains(asset) ? background : regular).add(asset);
+        regular.sort(Comparator.comparingInt(Artifact::size));
+        background.sort(Comparator.comparingInt(Artifact::size));
+
+        List<CompletableFuture<File>> futures = new ArrayList<>(downloadEngine.submitAll(regular, DownloadEngine.Priority.NORMAL, listener));
+        futures.addAll(downloadEngine.submitAll(background, DownloadEngine.Priority.BACKGROUND, listener));
+        DownloadEngine.join(futures);
+        event.finish(versionId, missingAssets.size(), missingBytes);
     }
 
     public void createArgs(boolean premium, String playerName, List<String> userJvmArgs)
@@ -270,120 +506,221 @@ public class Downloader
         if (versionData == null)
             return;
 
-        boolean hasArguments = versionData.has("arguments");
-        if (hasArguments)
-        {
-            JsonArray gameArgs = versionData.getAsJsonObject("arguments").getAsJsonArray("game");
-            StringBuilder gameArgsBuilder = new StringBuilder();
-            for (JsonElement arg : gameArgs.asList())
-            {
-                if (arg.isJsonPrimitive() && arg.getAsJsonPrimitive().isString())
-                    gameArgsBuilder.append(" ").append(arg.getAsJsonPrimitive().getAsString());
-            }
-            gameArguments = gameArgsBuilder.toString();
-        }
-        else
-            gameArguments = " " + versionData.get("minecraftArguments").getAsString();
+        LaunchPhaseEvent event = LaunchPhaseEvent.start("createArgs");
+        launchPlan = buildLaunchPlan(premium, playerName, userJvmArgs);
+        // Access tokens expire, so only offline plans are reused
+        launchPlanCacheable = !premium;
+        String script = launchPlan.toScript();
 
-        String name;
-        String uuid;
-        String authToken;
+        listener.status("Starting Minecraft " + versionId);
+        runPath = rootDirectory.resolve("vlauncher-run.bat");
+        FileHelper.createFile(script.getBytes(), runPath);
+        event.finish(versionId, 1, script.length());
+    }
+
+    LaunchPlan buildLaunchPlan(boolean premium, String playerName, List<String> userJvmArgs)
+    {
+        // A null value drops the argument together with its option
+        Map<String, String> values = new HashMap<>();
         if (premium)
         {
             JsonObject playerData = logIn();
-            name = playerData.getAsJsonObject("selectedProfile").get("name").getAsString();
-            uuid = playerData.getAsJsonObject("selectedProfile").get("id").getAsString();
-            authToken = playerData.get("accessToken").getAsString();
-            gameArguments = gameArguments.replace("${auth_uuid}", uuid);
-            gameArguments = gameArguments.replace("--clientId ", "");
-            gameArguments = gameArguments.replace("${clientid} ", "");
-            gameArguments = gameArguments.replace("${auth_xuid} ", playerData.get("xuid").getAsString());
-            gameArguments = gameArguments.replace("${user_type}", "msa");
+            values.put("auth_player_name", playerData.getAsJsonObject("selectedProfile").get("name").getAsString());
+            values.put("auth_uuid", playerData.getAsJsonObject("selectedProfile").get("id").getAsString());
+            values.put("auth_access_token", playerData.get("accessToken").getAsString());
+            values.put("auth_xuid", playerData.get("xuid").getAsString());
+            values.put("clientid", null);
+            values.put("user_type", "msa");
         }
         else
         {
-            name = !playerName.isEmpty() ? playerName : "Player";
-            authToken = "0";
-            gameArguments = gameArguments.replace("--uuid ", "");
-            gameArguments = gameArguments.replace("${auth_uuid} ", "");
-            gameArguments = gameArguments.replace("--clientId ", "");
-            gameArguments = gameArguments.replace("${clientid} ", "");
-            gameArguments = gameArguments.replace("--xuid ", "");
-            gameArguments = gameArguments.replace("${auth_xuid} ", "");
-            gameArguments = gameArguments.replace("${user_type}", "mojang");
+            values.put("auth_player_name", !playerName.isEmpty() ? playerName : "Player");
+            values.put("auth_uuid", null);
+            values.put("auth_access_token", "0");
+            values.put("auth_xuid", null);
+            values.put("clientid", null);
+            values.put("user_type", "mojang");
+        }
+        values.put("version_name", versionId);
+        values.put("game_directory", rootDirectory.toAbsolutePath().toString());
+        values.put("assets_root", rootDirectory.resolve("assets").toAbsolutePath().toString());
+        values.put("assets_index_name", assetsVersion);
+        values.put("version_type", versionType);
+        values.put("user_properties", "0");
+        values.put("natives_directory", nativesDirectory.toAbsolutePath().toString());
+        values.put("launcher_name", "VLauncher");
+        values.put("launcher_version", "1.0");
+
+        // Only the libraries of this version, a wildcard would also load the ones of every other version in the root
+        List<LaunchPlan.ClasspathEntry> classpathEntries = new ArrayList<>(classpath.size() + 1);
+        Set<Path> classpathPaths = new HashSet<>();
+        for (Artifact library : classpath)
+        {
+            Path path = library.path().toAbsolutePath();
+            if (classpathPaths.add(path))
+                classpathEntries.add(new LaunchPlan.ClasspathEntry(path, library.size()));
         }
+        classpathEntries.add(new LaunchPlan.ClasspathEntry(rootDirectory.resolve("versions").resolve(versionId).resolve(versionId + ".jar").toAbsolutePath(), versionData.client().size()));
+        StringJoiner classpathValue = new StringJoiner(File.pathSeparator);
+        classpathEntries.forEach(entry -> classpathValue.add(entry.path().toString()));
+        values.put("classpath", classpathValue.toString());
 
-        gameArguments = gameArguments.replace("${auth_player_name}", name);
-        gameArguments = gameArguments.replace("${version_name}", versionId);
-        gameArguments = gameArguments.replace("${game_directory}", "\"" + rootDirectory.toAbsolutePath() + "\"");
-        gameArguments = gameArguments.replace("${assets_root}", "\"" + rootDirectory.resolve("assets").toAbsolutePath() + "\"");
-        gameArguments = gameArguments.replace("${assets_index_name}", assetsVersion);
-        gameArguments = gameArguments.replace("${auth_access_token}", authToken);
-        gameArguments = gameArguments.replace("${version_type}", versionType);
-        gameArguments = gameArguments.replace("${user_properties}", "0");
-
-        StringBuilder classpath = new StringBuilder("\"");
-        if (os.equals("windows"))
+        List<String> jvmArguments = new ArrayList<>();
+        // Each entry is one argument from its own field, so a path with spaces stays intact
+        for (String userJvm : userJvmArgs)
         {
-            for (File library : libraries)
-                classpath.append(library.toPath().toAbsolutePath()).append(";");
+            if (userJvm != null && !userJvm.isBlank())
+                jvmArguments.add(userJvm);
+        }
+
+        List<String> gameArguments;
+        if (versionData.hasArguments())
+        {
+            jvmArguments.addAll(resolveArguments(versionData.jvmArguments(), values));
+            gameArguments = resolveArguments(versionData.gameArguments(), values);
         }
         else
         {
-            classpath.append(rootDirectory.resolve("libraries").toAbsolutePath()).append("/*:");
+            jvmArguments.add("-Djava.library.path=" + values.get("natives_directory"));
+            jvmArguments.add("-cp");
+            jvmArguments.add(values.get("classpath"));
+            gameArguments = resolveArguments(List.of(versionData.minecraftArguments().trim().split("\\s+")), values);
         }
-        classpath.append(rootDirectory.resolve("versions").resolve(versionId).resolve(versionId + ".jar").toAbsolutePath()).append("\"");
 
-        StringBuilder jvmArgsBuilder = new StringBuilder();
-        for (String userJvm : userJvmArgs)
+        return new LaunchPlan(getLaunchPlanKey(versionId, playerName, userJvmArgs), versionId, java != null ? java.toPath().toAbsolutePath() : null, rootDirectory.toAbsolutePath(),
+                nativesDirectory.toAbsolutePath(), mainClass, stampAssetIndex(), classpathEntries, jvmArguments, gameArguments);
+    }
+
+    private LaunchPlan.FileStamp stampAssetIndex()
+    {
+        if (versionData.assetIndex() == null)
+            return null;
+        Path path = rootDirectory.resolve("assets").resolve("indexes").resolve(versionData.assetIndex().id() + ".json").toAbsolutePath();
+        try
+        {
+            return LaunchPlan.FileStamp.of(path);
+        }
+        catch (NoSuchFileException e)
+        {
+            return null;
+        }
+        catch (IOException e)
         {
-            if (userJvm != null && !userJvm.isEmpty())
-                jvmArgsBuilder.append(userJvm).append(" ");
+            throw new RuntimeException(e);
         }
+    }
 
-        if (hasArguments)
+    private static List<String> resolveArguments(List<String> arguments, Map<String, String> values)
+    {
+        List<String> resolved = new ArrayList<>(arguments.size());
+        for (String argument : arguments)
         {
-            JsonArray jvmArgs = versionData.getAsJsonObject("arguments").getAsJsonArray("jvm");
-            for (JsonElement arg : jvmArgs.asList())
-            {
-                if (arg.isJsonPrimitive() && arg.getAsJsonPrimitive().isString())
-                    jvmArgsBuilder.append(arg.getAsJsonPrimitive().getAsString()).append(" ");
-            }
-            jvmArguments = jvmArgsBuilder.toString();
-            jvmArguments = jvmArguments.replace("${natives_directory}", "\"" + FileHelper.extractNatives(natives).toAbsolutePath() + "\"");
-            jvmArguments = jvmArguments.replace("${launcher_name}", "VLauncher");
-            jvmArguments = jvmArguments.replace("${launcher_version}", "1.0");
+            String value = substitute(argument, values);
+            if (value != null)
+                resolved.add(value);
+            else if (!resolved.isEmpty() && resolved.getLast().startsWith("--"))
+                resolved.removeLast();
+        }
+        return resolved;
+    }
+
+    // Replaces every ${name} in one pass, names without a value are left as they are
+    private static String substitute(String argument, Map<String, String> values)
+    {
+        int start = argument.indexOf("${");
+        if (start < 0)
+            return argument;
 
-            jvmArguments = jvmArguments.replace("${classpath}", classpath);
+        StringBuilder resolved = new StringBuilder(argument.length() + 64);
+        int position = 0;
+        while (start >= 0)
+        {
+            int end = argument.indexOf('}', start);
+            if (end < 0)
+                break;
+
+            String name = argument.substring(start + 2, end);
+            resolved.append(argument, position, start);
+            if (!values.containsKey(name))
+                resolved.append(argument, start, end + 1);
+            else if (values.get(name) == null)
+                return null;
+            else
+                resolved.append(values.get(name));
+            position = end + 1;
+            start = argument.indexOf("${", position);
         }
-        else
+        return resolved.append(argument, position, argument.length()).toString();
+    }
+
+    /**
+     * Hashes the version JSON together with the settings the launch arguments are built from. Returns null while the
+     * version JSON has not been downloaded.
+     */
+    public String getLaunchPlanKey(String version, String playerName, List<String> userJvmArgs)
+    {
+        try
+        {
+            String versionHash = FileHelper.sha1(Files.readAllBytes(rootDirectory.resolve("versions").resolve(version).resolve(version + ".json")));
+            String settings = String.join("\n", versionHash, version, playerName, String.join("\t", userJvmArgs), rootDirectory.toAbsolutePath().toString(),
+                    System.getProperty("os.name"), System.getProperty("os.arch"));
+            return FileHelper.sha1(settings.getBytes(StandardCharsets.UTF_8));
+        }
+        catch (NoSuchFileException e)
         {
-            jvmArgsBuilder.append("-Djava.library.path=").append("\"" + FileHelper.extractNatives(natives).toAbsolutePath() + "\" ");
-            jvmArgsBuilder.append("-cp ").append(classpath).append(" ");
-            jvmArguments = jvmArgsBuilder.toString();
+            return null;
         }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
 
-        StringBuilder command = new StringBuilder("@echo off\n");
-        command.append("echo Staring Minecraft ").append(versionId).append(" using VLauncher!\n");
-        command.append(java == null ? "java " : "\"" + java.getAbsolutePath() + "\" ");
-        command.append(jvmArguments);
-        command.append(mainClass);
-        command.append(gameArguments);
+    /**
+     * Returns the plan saved by the last launch of this profile if nothing it was built from has changed and its files
+     * are still there, without parsing any JSON or touching the network. Returns null otherwise.
+     * <p>
+     * Only the size and modification time of the asset index are checked, not the asset objects it lists: statting
+     * thousands of objects would cost most of what the plan saves. A deleted or damaged object is restored by
+     * Verify &amp; Repair or by the next launch that does not use a saved plan.
+     */
+    public LaunchPlan loadLaunchPlan(String profile, String version, String playerName, List<String> userJvmArgs)
+    {
+        String key = getLaunchPlanKey(version, playerName, userJvmArgs);
+        if (key == null)
+            return null;
+
+        LaunchPlan plan = launchPlanCache.load(profile, key);
+        if (plan == null || !plan.isValid())
+            return null;
+        // Keeps the natives from being collected as unused
+        nativesDirectory = plan.nativesDirectory();
+        try
+        {
+            Files.setLastModifiedTime(nativesDirectory, FileTime.fromMillis(System.currentTimeMillis()));
+        }
+        catch (IOException e)
+        {
+            System.out.println("Could not touch " + nativesDirectory + ": " + e);
+        }
+        return plan;
+    }
 
-        Main.getInstance().getGuiManager().setLoadingText("Starting Minecraft " + versionId);
-        runPath = rootDirectory.resolve("vlauncher-run.bat");
-        FileHelper.createFile(command.toString().getBytes(), runPath);
+    public void saveLaunchPlan(String profile)
+    {
+        if (launchPlan != null && launchPlanCacheable)
+            launchPlanCache.save(profile, launchPlan);
+    }
+
+    public LaunchPlan getLaunchPlan()
+    {
+        return launchPlan;
     }
 
     private JsonObject logIn()
     {
         try
         {
-            HttpURLConnection mojangConnection = (HttpURLConnection) URI.create("https://authserver.mojang.com/authenticate").toURL().openConnection();
-            mojangConnection.setDoOutput(true);
-            mojangConnection.setRequestMethod("POST");
-            mojangConnection.addRequestProperty("Content-Type", "application/json");
-
             JsonObject payload = new JsonObject();
 
             JsonObject agent = new JsonObject();
@@ -394,28 +731,31 @@ public class Downloader
             payload.addProperty("username", "Visnaa");
             payload.addProperty("password", "hawkTuah");
 
-            mojangConnection.getOutputStream().write(payload.toString().getBytes());
+            HttpResponse<String> mojangResponse = HttpTransport.send(HttpTransport.request("https://authserver.mojang.com/authenticate")
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(payload.toString()))
+                    .build(), HttpResponse.BodyHandlers.ofString());
 
-            int responseCode = mojangConnection.getResponseCode();
-            if (responseCode != HttpURLConnection.HTTP_BAD_REQUEST)
+            int responseCode = mojangResponse.statusCode();
+            if (responseCode == HttpURLConnection.HTTP_BAD_REQUEST)
                 throw new IllegalStateException("Invalid username or password: HTTP " + responseCode);
             else if (responseCode != HttpURLConnection.HTTP_OK)
                 throw new IllegalStateException("Could not log into Microsoft account: HTTP " + responseCode);
 
-            JsonObject data = JsonParser.parseString(mojangConnection.getResponseMessage()).getAsJsonObject();
+            JsonObject data = JsonParser.parseString(mojangResponse.body()).getAsJsonObject();
 
-            HttpURLConnection xboxConnection = (HttpURLConnection) URI.create("https://api.minecraftservices.com/minecraft/profile").toURL().openConnection();
-            xboxConnection.setDoOutput(true);
-            xboxConnection.setRequestMethod("GET");
-            xboxConnection.addRequestProperty("Authorization", "Bearer " + data.get("accessToken").getAsString());
+            HttpResponse<String> xboxResponse = HttpTransport.send(HttpTransport.request("https://api.minecraftservices.com/minecraft/profile")
+                    .header("Authorization", "Bearer " + data.get("accessToken").getAsString())
+                    .GET()
+                    .build(), HttpResponse.BodyHandlers.ofString());
 
-            responseCode = xboxConnection.getResponseCode();
-            if (responseCode != HttpURLConnection.HTTP_BAD_REQUEST)
+            responseCode = xboxResponse.statusCode();
+            if (responseCode == HttpURLConnection.HTTP_BAD_REQUEST)
                 throw new IllegalStateException("Invalid username or password: HTTP " + responseCode);
             else if (responseCode != HttpURLConnection.HTTP_OK)
                 throw new IllegalStateException("Could not log into Microsoft account: HTTP " + responseCode);
 
-            data.addProperty("xuid", JsonParser.parseString(xboxConnection.getResponseMessage()).getAsJsonObject().get("xuid").getAsString());
+            data.addProperty("xuid", JsonParser.parseString(xboxResponse.body()).getAsJsonObject().get("xuid").getAsString());
 
             return data;
         }
@@ -425,6 +765,16 @@ public class Downloader
         }
     }
 
+    public void saveVerificationIndex()
+    {
+        verificationIndex.save();
+    }
+
+    public void setDeepVerify(boolean deepVerify)
+    {
+        verificationIndex.setDeepVerify(deepVerify);
+    }
+
     public Path getRootDirectory()
     {
         return rootDirectory;
@@ -6,25 +6,26 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 
 import java.io.*;
-import java.net.HttpURLConnection;
-import java.net.URI;
-import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.CopyOption;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
-import java.util.Arrays;
-import java.util.List;
-import java.util.UUID;
-import java.util.concurrent.TimeoutException;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.stream.Stream;
 
 public class FileHelper
 {
-    private static Path tempFolder = createTempFolder();
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long MAPPED_HASH_THRESHOLD = 8 * 1024 * 1024;
+    private static final long MAPPED_HASH_CHUNK = 256 * 1024 * 1024;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
 
     public static URL getResource(String path)
     {
@@ -74,14 +75,7 @@ public class FileHelper
         try
         {
             Gson gson = new GsonBuilder().setPrettyPrinting().create();
-            String json = gson.toJson(config);
-            File file = new File(path);
-            if (file.exists())
-                file.delete();
-            file.createNewFile();
-            FileWriter writer = new FileWriter(file);
-            writer.write(json);
-            writer.close();
+            createFile(gson.toJson(config).getBytes(StandardCharsets.UTF_8), Path.of(path));
         }
         catch (Exception e)
         {
@@ -91,23 +85,25 @@ public class FileHelper
 
     public static byte[] getHttpResource(String url)
     {
-        try
+        try (InputStream stream = openHttpStream(url))
         {
-            HttpURLConnection connection = (HttpURLConnection) URI.create(url).toURL().openConnection();
-            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK)
-                throw new TimeoutException("HTTP error: " + connection.getResponseCode());
-            InputStream stream = connection.getInputStream();
-
-            byte[] bytes = stream.readAllBytes();
-            stream.close();
-            connection.disconnect();
-            return bytes;
+            return stream.readAllBytes();
         } catch (Exception e)
         {
             throw new RuntimeException(e);
         }
     }
 
+    public static InputStream openHttpStream(String url)
+    {
+        try
+        {
+            return HttpTransport.openStream(url);
+        } catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
 
     public static File downloadToFile(Path path, String url)
     {
@@ -115,116 +111,157 @@ public class FileHelper
     }
 
     public static File downloadToFile(Path path, String url, int size, String sha1)
+    {
+        return downloadToFile(path, url, size, sha1, null);
+    }
+
+    public static File downloadToFile(Path path, String url, int size, String sha1, VerificationIndex index)
     {
         try
         {
-            File file = path.toFile();
-            if (file.exists())
-            {
-                FileInputStream stream = new FileInputStream(file);
-                byte[] bytes = stream.readAllBytes();
-                if (bytes.length == size && validateSha1(bytes, sha1))
-                    return file;
-            }
-
-            byte[] bytes = getHttpResource(url);
-            if (size != -1 && bytes.length != size)
-                throw new IllegalStateException("File size does not match");
+            if ((size != -1 || sha1 != null) && isValid(path, size, sha1, index))
+                return path.toFile();
 
-            if (sha1 != null && !validateSha1(bytes, sha1))
-                throw new IllegalStateException("File's SHA-1 did not match");
-
-            createFile(bytes, path);
-            return file;
+            return fetchToFile(path, url, size, sha1, index);
         } catch (Exception e)
         {
             throw new RuntimeException(e);
         }
     }
 
-    private static Path createTempFolder()
+    public static File fetchToFile(Path path, String url, int size, String sha1, VerificationIndex index)
     {
+        FileOperationEvent event = FileOperationEvent.start("download");
         try
         {
-            Path temp = Files.createTempDirectory("vlauncher-" + UUID.randomUUID());
-            temp.toFile().deleteOnExit();
-            return temp;
-        }
-        catch (Exception e)
+            // Opening the stream is already retried by HttpTransport, this covers transfers that break off
+            for (int retry = 0; ; retry++)
+            {
+                InputStream stream = HttpTransport.openStream(url);
+                try (stream)
+                {
+                    writeVerified(stream, path, size, sha1);
+                    break;
+                }
+                catch (IOException | IllegalStateException e)
+                {
+                    if (retry >= HttpTransport.getRetries())
+                        throw e;
+                    DownloadMetrics.get().recordRetry(url);
+                    System.out.println("Retrying download of " + url + ": " + e);
+                    Thread.sleep(HttpTransport.getBackoffMillis(retry));
+                }
+            }
+            if (index != null)
+                index.record(path, sha1);
+            event.finish(path, size, "downloaded");
+            return path.toFile();
+        } catch (Exception e)
         {
+            event.finish(path, size, "failed");
             throw new RuntimeException(e);
         }
     }
 
-    public static void createFile(byte[] bytes, Path path)
+    public static boolean isValid(Path path, long size, String sha1, VerificationIndex index) throws IOException
+    {
+        FileOperationEvent event = FileOperationEvent.start("verify");
+        boolean valid;
+        if (index != null)
+            valid = index.isVerified(path, size, sha1);
+        else
+            valid = Files.exists(path) && (size == -1 || Files.size(path) == size) && (sha1 == null || sha1.equals(sha1(path)));
+        DownloadMetrics.get().recordCache(valid);
+        event.finish(path, size, valid ? "hit" : "miss");
+        return valid;
+    }
+
+    public static void writeVerified(InputStream stream, Path path, long size, String sha1) throws IOException
     {
+        DownloadMetrics metrics = DownloadMetrics.get();
+        MessageDigest digest = newSha1();
+        Path temp = createTempSibling(path);
         try
         {
-            File file = path.toFile();
-            file.mkdirs();
-            if (file.exists())
-                file.delete();
-            file.createNewFile();
-
-            FileOutputStream stream = new FileOutputStream(file);
-            stream.write(bytes);
-            stream.close();
+            long written = 0;
+            try (OutputStream output = Files.newOutputStream(temp))
+            {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = stream.read(buffer)) != -1)
+                {
+                    digest.update(buffer, 0, read);
+                    output.write(buffer, 0, read);
+                    written += read;
+                    metrics.recordBytes(read);
+                }
+            }
+
+            if ((size != -1 && written != size) || (sha1 != null && !sha1.equals(toHex(digest.digest()))))
+            {
+                metrics.recordVerificationFailure();
+                throw new IllegalStateException(size != -1 && written != size ? "File size does not match" : "File's SHA-1 did not match");
+            }
+
+            moveAtomically(temp, path);
+            metrics.recordFile();
         }
-        catch (Exception e)
+        finally
         {
-            throw new RuntimeException(e);
+            Files.deleteIfExists(temp);
         }
     }
 
-    public static Path extractNatives(List<File> natives)
+    public static void createFile(byte[] bytes, Path path)
     {
+        FileOperationEvent event = FileOperationEvent.start("write");
         try
         {
-            tempFolder.resolve("natives").toFile().mkdir();
-            for (File file : natives)
+            Path temp = createTempSibling(path);
+            try
+            {
+                Files.write(temp, bytes);
+                moveAtomically(temp, path);
+                event.finish(path, bytes.length, "written");
+            }
+            finally
             {
-                Path nativePath = Files.copy(file.toPath(), tempFolder.resolve("natives").resolve(file.getName()), StandardCopyOption.REPLACE_EXISTING);
-                extractZip(nativePath.toFile(), tempFolder.resolve("natives"), "dll");
+                Files.deleteIfExists(temp);
             }
-            return tempFolder.resolve("natives");
         }
-        catch (IOException e)
+        catch (Exception e)
         {
             throw new RuntimeException(e);
         }
     }
 
-    public static boolean extractZip(File source, Path destination, String... extensions)
+    private static Path createTempSibling(Path path) throws IOException
     {
-        if (!source.exists())
-            return false;
-
-        if (destination.toFile().exists())
-            destination.toFile().delete();
-        destination.toFile().mkdirs();
+        Path parent = path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        return Files.createTempFile(parent, path.getFileName().toString() + ".", ".part");
+    }
 
-        try (ZipInputStream stream = new ZipInputStream(new FileInputStream(source)))
+    static void moveAtomically(Path source, Path target) throws IOException
+    {
+        try
         {
-            ZipEntry entry;
-            while ((entry = stream.getNextEntry()) != null)
-            {
-                if (entry.isDirectory())
-                    destination.resolve(entry.getName()).toFile().mkdir();
-
-                String[] name = entry.getName().split("\\.");
-                String extension = name[name.length - 1];
-                if (!entry.isDirectory() && (extensions == null || extensions.length == 0 || Arrays.stream(extensions).toList().contains(extension)))
-                    Files.copy(stream, destination.resolve(entry.getName()), StandardCopyOption.REPLACE_EXISTING);
-                stream.closeEntry();
-            }
-            return true;
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
         }
-        catch (Exception e)
+        catch (AtomicMoveNotSupportedException e)
         {
-            throw new RuntimeException(e);
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
         }
     }
 
+    public static boolean extractZip(File source, Path destination, String... extensions)
+    {
+        FileOperationEvent event = FileOperationEvent.start("extract");
+        boolean extracted = new ZipExtractor(source, destination, extensions == null ? Set.of() : Set.of(extensions)).extract();
+        event.finish(source.toPath(), source.length(), extracted ? "ready" : "missing");
+        return extracted;
+    }
+
     public static void delete(Path path)
     {
         try
@@ -238,34 +275,96 @@ public class FileHelper
         }
     }
 
-    public static int getHttpFileSize(String url)
+    public static void deleteRecursively(Path path) throws IOException
+    {
+        if (!Files.exists(path))
+            return;
+
+        try (Stream<Path> paths = Files.walk(path))
+        {
+            for (Path child : paths.sorted(Comparator.reverseOrder()).toList())
+                Files.delete(child);
+        }
+    }
+
+    public static boolean validateSha1(byte[] bytes, String sha1)
+    {
+        MessageDigest algorithm = newSha1();
+        algorithm.update(bytes);
+        return sha1.equals(toHex(algorithm.digest()));
+    }
+
+    public static String sha1(byte[] bytes)
+    {
+        return toHex(newSha1().digest(bytes));
+    }
+
+    public static String sha1(Path path)
     {
         try
         {
-            HttpURLConnection connection = (HttpURLConnection) new URI(url).toURL().openConnection();
-            int size = connection.getContentLength();
-            connection.disconnect();
-            return size;
+            FileOperationEvent event = FileOperationEvent.start("hash");
+            long start = System.nanoTime();
+            long size = Files.size(path);
+            boolean mapped = size >= MAPPED_HASH_THRESHOLD;
+            String sha1 = mapped ? sha1Mapped(path) : sha1Streamed(path);
+            DownloadMetrics.get().recordVerification(size, System.nanoTime() - start);
+            event.finish(path, size, mapped ? "mapped" : "streamed");
+            return sha1;
         }
-        catch (Exception e)
+        catch (IOException e)
         {
             throw new RuntimeException(e);
         }
     }
 
-    public static boolean validateSha1(byte[] bytes, String sha1)
+    private static String sha1Streamed(Path path) throws IOException
     {
-        try
+        try (InputStream stream = Files.newInputStream(path))
         {
-            MessageDigest algorithm = MessageDigest.getInstance("SHA-1");
-            algorithm.update(bytes.clone());
-            byte[] digest = algorithm.digest();
+            MessageDigest algorithm = newSha1();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = stream.read(buffer)) != -1)
+                algorithm.update(buffer, 0, read);
+            return toHex(algorithm.digest());
+        }
+    }
+
+    private static String sha1Mapped(Path path) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            MessageDigest algorithm = newSha1();
+            long size = channel.size();
+            for (long position = 0; position < size; position += MAPPED_HASH_CHUNK)
+                algorithm.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAPPED_HASH_CHUNK, size - position)));
+            return toHex(algorithm.digest());
+        }
+    }
 
-            StringBuilder hex = new StringBuilder();
-            for (byte b : digest)
-                hex.append(String.format("%02x", b));
+    public static String toHex(byte[] bytes)
+    {
+        return toHex(bytes, 0, bytes.length);
+    }
 
-            return sha1.contentEquals(hex);
+    public static String toHex(byte[] bytes, int offset, int length)
+    {
+        char[] hex = new char[length * 2];
+        for (int i = 0; i < length; i++)
+        {
+            byte value = bytes[offset + i];
+            hex[i * 2] = HEX_DIGITS[(value >> 4) & 0xF];
+            hex[i * 2 + 1] = HEX_DIGITS[value & 0xF];
+        }
+        return new String(hex);
+    }
+
+    private static MessageDigest newSha1()
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-1");
         }
         catch (Exception e)
         {
@@ -0,0 +1,51 @@
+package com.visnaa.vlauncher.file;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.nio.file.Path;
+
+@Name("com.visnaa.vlauncher.FileOperation")
+@Label("File Operation")
+@Category({"VLauncher", "File"})
+@Description("A download, verification, hash, write or extraction performed by FileHelper")
+@StackTrace(false)
+public class FileOperationEvent extends Event
+{
+    @Label("Operation")
+    public String operation;
+
+    @Label("Path")
+    public String path;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    @Label("Outcome")
+    public String outcome;
+
+    public static FileOperationEvent start(String operation)
+    {
+        FileOperationEvent event = new FileOperationEvent();
+        event.operation = operation;
+        event.begin();
+        return event;
+    }
+
+    public void finish(Path path, long bytes, String outcome)
+    {
+        end();
+        if (!shouldCommit())
+            return;
+        this.path = path == null ? null : path.toString();
+        this.bytes = bytes;
+        this.outcome = outcome;
+        commit();
+    }
+}
@@ -0,0 +1,24 @@
+package com.visnaa.vlauncher.file;
+
+import java.io.IOException;
+
+/**
+ * An HTTP response with an unexpected status, so callers can tell a missing object from a failed connection.
+ */
+public class HttpStatusException extends IOException
+{
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
+    public HttpStatusException(int statusCode, String url)
+    {
+        super("HTTP error " + statusCode + " for " + url);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode()
+    {
+        return statusCode;
+    }
+}
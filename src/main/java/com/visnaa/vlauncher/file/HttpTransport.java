@@ -0,0 +1,335 @@
+package com.visnaa.vlauncher.file;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+public class HttpTransport
+{
+    public static final int DEFAULT_CONNECT_TIMEOUT = 10;
+    public static final int DEFAULT_REQUEST_TIMEOUT = 60;
+    public static final int DEFAULT_IDLE_TIMEOUT = 30;
+    public static final int DEFAULT_RETRIES = 3;
+    public static final int DEFAULT_HEDGE_PERCENTILE = 95;
+    public static final long BACKOFF_BASE_MILLIS = 250;
+    public static final long BACKOFF_MAX_MILLIS = 8000;
+    public static final long HEDGE_DEFAULT_MILLIS = 2000;
+    public static final long HEDGE_MIN_MILLIS = 50;
+    public static final int HEDGE_MIN_SAMPLES = 20;
+    public static final List<String> WARM_HOSTS = List.of("https://piston-meta.mojang.com/", "https://libraries.minecraft.net/", "https://resources.download.minecraft.net/");
+
+    private static Duration connectTimeout = Duration.ofSeconds(DEFAULT_CONNECT_TIMEOUT);
+    private static Duration requestTimeout = Duration.ofSeconds(DEFAULT_REQUEST_TIMEOUT);
+    private static volatile Duration idleTimeout = Duration.ofSeconds(DEFAULT_IDLE_TIMEOUT);
+    private static volatile HttpClient client = createClient();
+    private static volatile int retries = DEFAULT_RETRIES;
+    private static volatile int hedgePercentile = DEFAULT_HEDGE_PERCENTILE;
+    private static volatile Map<String, List<String>> mirrors = Map.of();
+
+    public static synchronized void configure(int connectTimeoutSeconds, int requestTimeoutSeconds)
+    {
+        connectTimeout = Duration.ofSeconds(connectTimeoutSeconds);
+        requestTimeout = Duration.ofSeconds(requestTimeoutSeconds);
+        client = createClient();
+    }
+
+    // Longest time a response body may go without delivering any bytes
+    public static void setIdleTimeout(Duration idleTimeout)
+    {
+        HttpTransport.idleTimeout = idleTimeout;
+    }
+
+    public static InputStream withIdleTimeout(InputStream stream)
+    {
+        return new IdleTimeoutInputStream(stream, idleTimeout);
+    }
+
+    public static void setRetries(int retries)
+    {
+        HttpTransport.retries = Math.max(0, retries);
+    }
+
+    // A percentile of 0 disables hedging
+    public static void setHedgePercentile(int hedgePercentile)
+    {
+        HttpTransport.hedgePercentile = Math.clamp(hedgePercentile, 0, 100);
+    }
+
+    // Maps an official base URL to the ordered mirror base URLs tried in its place
+    public static void setMirrors(Map<String, List<String>> mirrors)
+    {
+        HttpTransport.mirrors = Map.copyOf(mirrors);
+    }
+
+    private static HttpClient createClient()
+    {
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(connectTimeout)
+                .build();
+    }
+
+    public static HttpClient getClient()
+    {
+        return client;
+    }
+
+    public static HttpRequest.Builder request(String url)
+    {
+        return HttpRequest.newBuilder(URI.create(url)).timeout(requestTimeout);
+    }
+
+    public static <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) throws IOException, InterruptedException
+    {
+        String url = request.uri().toString();
+        long start = System.nanoTime();
+        try
+        {
+            HttpResponse<T> response = client.send(request, handler);
+            DownloadMetrics.get().recordRequest(url, System.nanoTime() - start);
+            if (response.statusCode() >= 400)
+                DownloadMetrics.get().recordFailure(url);
+            return response;
+        }
+        catch (IOException e)
+        {
+            DownloadMetrics.get().recordFailure(url);
+            throw e;
+        }
+    }
+
+    public static <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler)
+    {
+        String url = request.uri().toString();
+        long start = System.nanoTime();
+        return client.sendAsync(request, handler).whenComplete((response, e) -> {
+            if (response != null)
+                DownloadMetrics.get().recordRequest(url, System.nanoTime() - start);
+            if (e != null || response.statusCode() >= 400)
+                DownloadMetrics.get().recordFailure(url);
+        });
+    }
+
+    public static <T> HttpResponse<T> exchange(String url, Function<URI, HttpRequest> factory, HttpResponse.BodyHandler<T> handler) throws IOException, InterruptedException
+    {
+        return exchange(url, factory, handler, true);
+    }
+
+    /**
+     * Sends a request to the URL or its mirrors. Connection errors, timeouts, 408, 429 and 5xx responses are
+     * retried with exponential backoff while rotating through the mirrors, other client errors fail over to the
+     * next mirror, and a duplicate request is sent to the next mirror once the host's latency percentile passes.
+     * Without {@code retry} every mirror is tried once without backoff.
+     */
+    public static <T> HttpResponse<T> exchange(String url, Function<URI, HttpRequest> factory, HttpResponse.BodyHandler<T> handler, boolean retry) throws IOException, InterruptedException
+    {
+        List<URI> candidates = getCandidates(url);
+        int attempts = retry ? Math.max(retries + 1, candidates.size()) : candidates.size();
+        IOException failure = null;
+        HttpResponse<T> last = null;
+        for (int attempt = 0; attempt < attempts; attempt++)
+        {
+            URI uri = candidates.get(attempt % candidates.size());
+            if (attempt > 0)
+                DownloadMetrics.get().recordRetry(uri.toString());
+
+            boolean retryable;
+            try
+            {
+                HttpResponse<T> response = hedged(candidates, attempt, factory, handler);
+                int status = response.statusCode();
+                if (status < 400)
+                    return response;
+
+                close(last);
+                last = response;
+                retryable = status == 408 || status == 429 || status >= 500;
+                failure = new IOException("HTTP error " + status + " for " + response.uri());
+            }
+            catch (IOException e)
+            {
+                retryable = true;
+                failure = e;
+            }
+
+            if (attempt + 1 < candidates.size())
+                continue;
+            if (!retryable)
+                break;
+            if (attempt + 1 < attempts)
+                Thread.sleep(getBackoffMillis(attempt + 1 - candidates.size()));
+        }
+
+        if (last != null)
+            return last;
+        throw failure;
+    }
+
+    private static <T> HttpResponse<T> hedged(List<URI> candidates, int attempt, Function<URI, HttpRequest> factory, HttpResponse.BodyHandler<T> handler) throws IOException, InterruptedException
+    {
+        URI primary = candidates.get(attempt % candidates.size());
+        CompletableFuture<HttpResponse<T>> first = sendAsync(factory.apply(primary), handler);
+        long delay = getHedgeDelayMillis(primary.toString());
+        if (delay < 0)
+            return await(first);
+
+        try
+        {
+            return await(first, delay);
+        }
+        catch (TimeoutException e)
+        {
+            URI backup = candidates.get((attempt + 1) % candidates.size());
+            DownloadMetrics.get().recordHedge(primary.toString());
+            CompletableFuture<HttpResponse<T>> second = sendAsync(factory.apply(backup), handler);
+            return await(race(first, second));
+        }
+    }
+
+    // Completes with the first successful response, or with an error response or failure once both requests are done
+    private static <T> CompletableFuture<HttpResponse<T>> race(CompletableFuture<HttpResponse<T>> first, CompletableFuture<HttpResponse<T>> second)
+    {
+        CompletableFuture<HttpResponse<T>> winner = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(2);
+        AtomicReference<HttpResponse<T>> error = new AtomicReference<>();
+        List<CompletableFuture<HttpResponse<T>>> requests = List.of(first, second);
+        // The loser is not cancelled, which would leave its connection open, its response is closed once it arrives
+        for (CompletableFuture<HttpResponse<T>> request : requests)
+        {
+            request.whenComplete((response, e) -> {
+                boolean won = response != null && response.statusCode() < 400 && winner.complete(response);
+                // A fast error response must not beat a healthy one, it is only kept in case the other request fails too
+                if (!won && (response == null || response.statusCode() < 400 || !error.compareAndSet(null, response)))
+                    close(response);
+
+                if (pending.decrementAndGet() == 0)
+                {
+                    HttpResponse<T> fallback = error.getAndSet(null);
+                    if (fallback != null && !winner.complete(fallback))
+                        close(fallback);
+                    winner.completeExceptionally(e != null ? e : new IOException("Both hedged requests failed"));
+                }
+            });
+        }
+        return winner;
+    }
+
+    private static <T> HttpResponse<T> await(CompletableFuture<HttpResponse<T>> future) throws IOException, InterruptedException
+    {
+        try
+        {
+            return await(future, Long.MAX_VALUE);
+        }
+        catch (TimeoutException e)
+        {
+            throw new IOException(e);
+        }
+    }
+
+    private static <T> HttpResponse<T> await(CompletableFuture<HttpResponse<T>> future, long millis) throws IOException, InterruptedException, TimeoutException
+    {
+        try
+        {
+            return future.get(millis, TimeUnit.MILLISECONDS);
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException io)
+                throw io;
+            throw new IOException(e.getCause());
+        }
+        catch (InterruptedException e)
+        {
+            // Cancelling would leave the connection open, so the response is closed whenever it arrives
+            future.thenAccept(HttpTransport::close);
+            throw e;
+        }
+    }
+
+    private static void close(HttpResponse<?> response)
+    {
+        if (response == null || !(response.body() instanceof Closeable body))
+            return;
+        try
+        {
+            body.close();
+        }
+        catch (IOException ignored)
+        {
+        }
+    }
+
+    public static List<URI> getCandidates(String url)
+    {
+        List<String> urls = new ArrayList<>();
+        mirrors.forEach((base, bases) -> {
+            if (url.startsWith(base))
+                bases.forEach(mirror -> urls.add(mirror + url.substring(base.length())));
+        });
+        if (!urls.contains(url))
+            urls.add(url);
+        return urls.stream().distinct().map(URI::create).toList();
+    }
+
+    private static long getHedgeDelayMillis(String url)
+    {
+        if (hedgePercentile == 0)
+            return -1;
+
+        DownloadMetrics.LatencyHistogram latency = DownloadMetrics.get().getLatencyHistory(url);
+        if (latency.getCount() < HEDGE_MIN_SAMPLES)
+            return HEDGE_DEFAULT_MILLIS;
+        return Math.max(HEDGE_MIN_MILLIS, latency.getPercentileMillis(hedgePercentile / 100D));
+    }
+
+    public static long getBackoffMillis(int retry)
+    {
+        long delay = Math.min(BACKOFF_MAX_MILLIS, BACKOFF_BASE_MILLIS << Math.min(retry, 16));
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    public static int getRetries()
+    {
+        return retries;
+    }
+
+    public static InputStream openStream(String url) throws IOException, InterruptedException
+    {
+        HttpResponse<InputStream> response = exchange(url, uri -> request(uri.toString()).GET().build(), HttpResponse.BodyHandlers.ofInputStream());
+        if (response.statusCode() != 200)
+        {
+            response.body().close();
+            throw new HttpStatusException(response.statusCode(), url);
+        }
+        return withIdleTimeout(response.body());
+    }
+
+    public static void prewarm()
+    {
+        for (String host : WARM_HOSTS)
+        {
+            client.sendAsync(request(host).method("HEAD", HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.discarding())
+                    .exceptionally(e -> {
+                        System.out.println("Could not pre-warm connection to " + host + ": " + e.getMessage());
+                        return null;
+                    });
+        }
+    }
+}
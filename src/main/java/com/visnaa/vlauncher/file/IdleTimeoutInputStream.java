@@ -0,0 +1,105 @@
+package com.visnaa.vlauncher.file;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Closes a response body that stops delivering bytes. The request timeout only covers the time until the headers
+ * arrive, so without this a stalled connection blocks a read forever.
+ */
+class IdleTimeoutInputStream extends FilterInputStream
+{
+    private static final long MIN_CHECK_MILLIS = 100;
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "vlauncher-idle-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final long timeoutNanos;
+    private final ScheduledFuture<?> check;
+    private volatile long lastActivity = System.nanoTime();
+    private volatile boolean timedOut;
+
+    IdleTimeoutInputStream(InputStream stream, Duration timeout)
+    {
+        super(stream);
+        timeoutNanos = timeout.toNanos();
+        long period = Math.max(MIN_CHECK_MILLIS, timeout.toMillis() / 4);
+        check = WATCHDOG.scheduleWithFixedDelay(this::checkIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    private void checkIdle()
+    {
+        if (System.nanoTime() - lastActivity < timeoutNanos)
+            return;
+
+        timedOut = true;
+        check.cancel(false);
+        try
+        {
+            in.close();
+        }
+        catch (IOException ignored)
+        {
+        }
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        try
+        {
+            int read = super.read();
+            return checkRead(read);
+        }
+        catch (IOException e)
+        {
+            throw timedOut ? timeout(e) : e;
+        }
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException
+    {
+        try
+        {
+            int read = super.read(buffer, offset, length);
+            return checkRead(read);
+        }
+        catch (IOException e)
+        {
+            throw timedOut ? timeout(e) : e;
+        }
+    }
+
+    // A body closed by the watchdog may look like a normal end of stream
+    private int checkRead(int read) throws IOException
+    {
+        if (timedOut)
+            throw timeout(null);
+        lastActivity = System.nanoTime();
+        return read;
+    }
+
+    private SocketTimeoutException timeout(IOException cause)
+    {
+        SocketTimeoutException exception = new SocketTimeoutException("No data received for " + TimeUnit.NANOSECONDS.toSeconds(timeoutNanos) + " s");
+        exception.initCause(cause);
+        return exception;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        check.cancel(false);
+        super.close();
+    }
+}
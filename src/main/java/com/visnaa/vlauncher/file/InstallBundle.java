@@ -0,0 +1,245 @@
+package com.visnaa.vlauncher.file;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.function.Consumer;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * A single ZIP holding everything one version needs, with a hash manifest as its first entry so the archive can be
+ * verified while it is streamed in. Already compressed files are stored without compression, so importing runs at
+ * disk speed.
+ */
+public class InstallBundle
+{
+    public static final String MANIFEST = "vlauncher-bundle.json";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path root;
+    private Consumer<Artifact> progressListener = _ -> {};
+
+    public InstallBundle(Path root)
+    {
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+    public void setProgressListener(Consumer<Artifact> progressListener)
+    {
+        this.progressListener = progressListener;
+    }
+
+    public Report export(Path bundle, String version, List<Artifact> artifacts, List<Path> files)
+    {
+        long start = System.nanoTime();
+        Map<Path, Entry> entries = new LinkedHashMap<>();
+        for (Path file : files)
+            entries.put(file.toAbsolutePath().normalize(), new Entry(relativize(file), fileSize(file), FileHelper.sha1(file)));
+        for (Artifact artifact : artifacts)
+            entries.putIfAbsent(artifact.path().toAbsolutePath().normalize(), new Entry(relativize(artifact.path()), artifact.size(), artifact.sha1()));
+
+        JsonObject manifest = new JsonObject();
+        manifest.addProperty("version", version);
+        JsonArray manifestEntries = new JsonArray();
+        entries.values().forEach(entry -> manifestEntries.add(entry.toJson()));
+        manifest.add("entries", manifestEntries);
+
+        long bytes = 0;
+        Path temp = bundle.resolveSibling(bundle.getFileName() + ".part");
+        try
+        {
+            Files.createDirectories(bundle.toAbsolutePath().getParent());
+            try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE)))
+            {
+                zip.putNextEntry(new ZipEntry(MANIFEST));
+                zip.write(manifest.toString().getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+
+                for (Map.Entry<Path, Entry> entry : entries.entrySet())
+                {
+                    ZipEntry zipEntry = new ZipEntry(entry.getValue().path());
+                    // A stored entry needs its size and CRC before the data, which costs one extra read from the cache
+                    if (!entry.getValue().path().endsWith(".json"))
+                    {
+                        zipEntry.setMethod(ZipEntry.STORED);
+                        zipEntry.setSize(Files.size(entry.getKey()));
+                        zipEntry.setCrc(crc32(entry.getKey()));
+                    }
+                    zip.putNextEntry(zipEntry);
+                    bytes += Files.copy(entry.getKey(), zip);
+                    zip.closeEntry();
+                }
+            }
+            FileHelper.moveAtomically(temp, bundle);
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+        finally
+        {
+            FileHelper.delete(temp);
+        }
+
+        Report report = new Report(entries.size(), bytes, 0, (System.nanoTime() - start) / 1e9);
+        System.out.println("Exported " + version + " to " + bundle + ": " + report);
+        return report;
+    }
+
+    /**
+     * Streams a bundle into the root directory. Every file is hashed as it is written and only moved into place once
+     * it matches the manifest; files that are already installed are skipped.
+     */
+    public Report importBundle(Path bundle, VerificationIndex index, ObjectStore objectStore)
+    {
+        long start = System.nanoTime();
+        int files = 0;
+        int skipped = 0;
+        long bytes = 0;
+        try (ZipInputStream zip = new ZipInputStream(new BufferedInputStream(Files.newInputStream(bundle), BUFFER_SIZE)))
+        {
+            ZipEntry first = zip.getNextEntry();
+            if (first == null || !first.getName().equals(MANIFEST))
+                throw new IllegalStateException(bundle + " is not a VLauncher bundle");
+
+            Map<String, Entry> manifest = new HashMap<>();
+            JsonObject manifestJson = JsonParser.parseString(new String(zip.readAllBytes(), StandardCharsets.UTF_8)).getAsJsonObject();
+            for (JsonElement element : manifestJson.getAsJsonArray("entries"))
+            {
+                Entry entry = Entry.fromJson(element.getAsJsonObject());
+                manifest.put(entry.path(), entry);
+            }
+
+            InputStream entryStream = new FilterInputStream(zip)
+            {
+                @Override
+                public void close()
+                {
+                }
+            };
+
+            ZipEntry zipEntry;
+            while ((zipEntry = zip.getNextEntry()) != null)
+            {
+                Entry entry = manifest.remove(zipEntry.getName());
+                if (entry == null)
+                    throw new IllegalStateException("Bundle entry " + zipEntry.getName() + " is not in the manifest");
+
+                Path target = resolve(entry.path());
+                Artifact artifact = new Artifact(entry.path(), target, null, (int) entry.size(), entry.sha1());
+                if (FileHelper.isValid(target, entry.size(), entry.sha1(), index))
+                {
+                    skipped++;
+                    progressListener.accept(artifact);
+                    continue;
+                }
+
+                FileHelper.writeVerified(entryStream, target, entry.size(), entry.sha1());
+                if (index != null)
+                    index.record(target, entry.sha1());
+                if (objectStore != null)
+                    objectStore.add(artifact);
+                files++;
+                bytes += entry.size();
+                progressListener.accept(artifact);
+            }
+
+            if (!manifest.isEmpty())
+                throw new IllegalStateException("Bundle is missing " + manifest.size() + " files, e.g. " + manifest.keySet().iterator().next());
+            if (index != null)
+                index.save();
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+
+        Report report = new Report(files, bytes, skipped, (System.nanoTime() - start) / 1e9);
+        System.out.println("Imported " + bundle + ": " + report);
+        return report;
+    }
+
+    private String relativize(Path path)
+    {
+        Path absolute = path.toAbsolutePath().normalize();
+        if (!absolute.startsWith(root))
+            throw new IllegalStateException(path + " is outside of " + root);
+        return root.relativize(absolute).toString().replace('\\', '/');
+    }
+
+    private Path resolve(String name)
+    {
+        Path target = root.resolve(name).normalize();
+        if (!target.startsWith(root))
+            throw new IllegalStateException("Bundle entry " + name + " is outside of " + root);
+        return target;
+    }
+
+    private static long crc32(Path path) throws IOException
+    {
+        CRC32 crc = new CRC32();
+        try (InputStream stream = Files.newInputStream(path))
+        {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = stream.read(buffer)) != -1)
+                crc.update(buffer, 0, read);
+        }
+        return crc.getValue();
+    }
+
+    private static long fileSize(Path path)
+    {
+        try
+        {
+            return Files.size(path);
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private record Entry(String path, long size, String sha1)
+    {
+        private JsonObject toJson()
+        {
+            JsonObject json = new JsonObject();
+            json.addProperty("path", path);
+            json.addProperty("size", size);
+            json.addProperty("sha1", sha1);
+            return json;
+        }
+
+        private static Entry fromJson(JsonObject json)
+        {
+            return new Entry(json.get("path").getAsString(), json.get("size").getAsLong(), json.get("sha1").getAsString());
+        }
+    }
+
+    public record Report(int files, long bytes, int skipped, double seconds)
+    {
+        @Override
+        public String toString()
+        {
+            return String.format("%d files (%.2f MB) in %.2f s (%.1f MB/s), %d already installed", files, bytes / 1_048_576D, seconds, bytes / 1_048_576D / Math.max(seconds, 1e-9), skipped);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.visnaa.vlauncher.file;
+
+import java.util.List;
+
+public record InstallPlan(int javaVersion, boolean runtimeMissing, Artifact client, boolean clientMissing, List<Artifact> libraries, List<Artifact> natives, List<Artifact> missingLibraries, List<Artifact> assets, List<Artifact> missingAssets)
+{
+    public InstallPlan withAssets(List<Artifact> assets, List<Artifact> missingAssets)
+    {
+        return new InstallPlan(javaVersion, runtimeMissing, client, clientMissing, libraries, natives, missingLibraries, assets, missingAssets);
+    }
+
+    public long getMissingBytes()
+    {
+        return (clientMissing ? client.size() : 0) + sizeOf(missingLibraries) + sizeOf(missingAssets);
+    }
+
+    public int getMissingFiles()
+    {
+        return (runtimeMissing ? 1 : 0) + (clientMissing ? 1 : 0) + missingLibraries.size() + missingAssets.size();
+    }
+
+    public static long sizeOf(List<Artifact> artifacts)
+    {
+        long bytes = 0;
+        for (Artifact artifact : artifacts)
+            bytes += artifact.size();
+        return bytes;
+    }
+
+    @Override
+    public String toString()
+    {
+        return getMissingFiles() + " missing files, " + getMissingBytes() + " bytes" + (runtimeMissing ? " and Java " + javaVersion : "");
+    }
+}
@@ -0,0 +1,117 @@
+package com.visnaa.vlauncher.file;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class IntegrityVerifier
+{
+    private final VerificationIndex verificationIndex;
+    private final DownloadEngine downloadEngine;
+    private final ObjectStore objectStore;
+    private DownloadListener listener = DownloadListener.NONE;
+
+    public IntegrityVerifier(VerificationIndex verificationIndex, DownloadEngine downloadEngine, ObjectStore objectStore)
+    {
+        this.verificationIndex = verificationIndex;
+        this.downloadEngine = downloadEngine;
+        this.objectStore = objectStore;
+    }
+
+    // Gets the verified bytes as progress, then the repair like any other download
+    public void setListener(DownloadListener listener)
+    {
+        this.listener = listener;
+    }
+
+    public Report verifyAndRepair(List<Artifact> artifacts)
+    {
+        long start = System.nanoTime();
+        AtomicLong bytes = new AtomicLong();
+        List<Artifact> failed = Collections.synchronizedList(new ArrayList<>());
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads))
+        {
+            List<Future<?>> futures = new ArrayList<>(artifacts.size());
+            for (Artifact artifact : artifacts)
+            {
+                futures.add(executor.submit(() -> {
+                    if (!verify(artifact))
+                    {
+                        // A hardlinked copy shares the corrupted data, so it must not be linked back
+                        if (objectStore != null)
+                            objectStore.verify(artifact);
+                        failed.add(artifact);
+                    }
+                    else
+                        bytes.addAndGet(artifact.size());
+                    listener.progress(artifact.size());
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+
+        double verifySeconds = (System.nanoTime() - start) / 1e9;
+        long repairedBytes = InstallPlan.sizeOf(failed);
+        if (!failed.isEmpty())
+        {
+            System.out.println("Repairing " + failed.size() + " files");
+            listener.status("Repairing " + failed.size() + " files");
+            listener.extendTotal(repairedBytes);
+            downloadEngine.downloadAll(failed, DownloadEngine.Priority.NORMAL, listener);
+        }
+        verificationIndex.save();
+
+        Report report = new Report(artifacts.size(), bytes.get(), failed.size(), repairedBytes, verifySeconds, (System.nanoTime() - start) / 1e9);
+        System.out.println(report);
+        return report;
+    }
+
+    private boolean verify(Artifact artifact)
+    {
+        Path path = artifact.path();
+        try
+        {
+            if (!Files.exists(path))
+                return false;
+
+            if (Files.size(path) == artifact.size() && artifact.sha1().equals(FileHelper.sha1(path)))
+            {
+                verificationIndex.record(path, artifact.sha1());
+                return true;
+            }
+
+            System.out.println("Corrupted file " + path);
+            verificationIndex.invalidate(path);
+            Files.delete(path);
+            return false;
+        }
+        catch (Exception e)
+        {
+            System.out.println("Could not verify " + path + ": " + e);
+            verificationIndex.invalidate(path);
+            return false;
+        }
+    }
+
+    public record Report(int files, long bytes, int repaired, long repairedBytes, double verifySeconds, double totalSeconds)
+    {
+        @Override
+        public String toString()
+        {
+            return String.format("Verified %d files (%.2f MB) in %.2f s (%.1f MB/s), repaired %d files (%.2f MB), total %.2f s", files, bytes / 1_048_576D, verifySeconds, bytes / 1_048_576D / Math.max(verifySeconds, 1e-9), repaired, repairedBytes / 1_048_576D, totalSeconds);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.visnaa.vlauncher.file;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.visnaa.vlauncher.LaunchPhase")
+@Label("Launch Phase")
+@Category({"VLauncher", "Launch"})
+@Description("A stage of preparing a Minecraft version for launch")
+@StackTrace(false)
+public class LaunchPhaseEvent extends Event
+{
+    @Label("Phase")
+    public String phase;
+
+    @Label("Version")
+    public String version;
+
+    @Label("Files")
+    public int files;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    public static LaunchPhaseEvent start(String phase)
+    {
+        LaunchPhaseEvent event = new LaunchPhaseEvent();
+        event.phase = phase;
+        event.begin();
+        return event;
+    }
+
+    public void finish(String version, int files, long bytes)
+    {
+        end();
+        if (!shouldCommit())
+            return;
+        this.version = version;
+        this.files = files;
+        this.bytes = bytes;
+        commit();
+    }
+}
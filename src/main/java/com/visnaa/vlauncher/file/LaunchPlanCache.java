@@ -0,0 +1,136 @@
+package com.visnaa.vlauncher.file;
+
+import com.visnaa.vlauncher.minecraft.LaunchPlan;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the last launch plan of each profile as tab separated lines, so a warm launch reads one small file and parses
+ * no JSON.
+ */
+public class LaunchPlanCache
+{
+    public static final String DIRECTORY = "vlauncher-plans";
+    private static final String FORMAT = "vlauncher-plan 2";
+
+    private final Path directory;
+
+    public LaunchPlanCache(Path root)
+    {
+        this.directory = root.resolve(DIRECTORY);
+    }
+
+    // Returns null when there is no plan for this key, the caller then builds a new one
+    public LaunchPlan load(String profile, String key)
+    {
+        Path file = getPath(profile);
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8))
+        {
+            if (!FORMAT.equals(reader.readLine()))
+                return null;
+
+            String planKey = null;
+            String version = null;
+            Path java = null;
+            Path workingDirectory = null;
+            Path nativesDirectory = null;
+            String mainClass = null;
+            LaunchPlan.FileStamp assetIndex = null;
+            List<LaunchPlan.ClasspathEntry> classpath = new ArrayList<>();
+            List<String> jvmArguments = new ArrayList<>();
+            List<String> gameArguments = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                String[] fields = line.split("\t", 2);
+                if (fields.length != 2)
+                    return null;
+                String value = fields[1];
+                switch (fields[0])
+                {
+                    case "key" -> {
+                        planKey = value;
+                        // Stop early instead of reading a plan that is going to be rebuilt anyway
+                        if (!planKey.equals(key))
+                            return null;
+                    }
+                    case "version" -> version = value;
+                    case "java" -> java = Path.of(value);
+                    case "directory" -> workingDirectory = Path.of(value);
+                    case "natives" -> nativesDirectory = Path.of(value);
+                    case "main" -> mainClass = value;
+                    case "assets" -> {
+                        String[] stamp = value.split("\t", 3);
+                        assetIndex = new LaunchPlan.FileStamp(Path.of(stamp[2]), Long.parseLong(stamp[0]), Long.parseLong(stamp[1]));
+                    }
+                    case "classpath" -> {
+                        String[] entry = value.split("\t", 2);
+                        classpath.add(new LaunchPlan.ClasspathEntry(Path.of(entry[1]), Long.parseLong(entry[0])));
+                    }
+                    case "jvm" -> jvmArguments.add(value);
+                    case "game" -> gameArguments.add(value);
+                    default -> {
+                        return null;
+                    }
+                }
+            }
+
+            if (planKey == null || version == null || workingDirectory == null || nativesDirectory == null || mainClass == null)
+                return null;
+            return new LaunchPlan(planKey, version, java, workingDirectory, nativesDirectory, mainClass, assetIndex, classpath, jvmArguments, gameArguments);
+        }
+        catch (NoSuchFileException e)
+        {
+            return null;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            System.out.println("Could not read launch plan " + file + ": " + e);
+            return null;
+        }
+    }
+
+    public void save(String profile, LaunchPlan plan)
+    {
+        // An argument with a line break would not read back, such a plan is simply rebuilt every launch
+        if (Stream.concat(plan.jvmArguments().stream(), plan.gameArguments().stream()).anyMatch(argument -> argument.indexOf('\n') >= 0 || argument.indexOf('\r') >= 0))
+            return;
+
+        StringBuilder contents = new StringBuilder(FORMAT).append('\n');
+        append(contents, "key", plan.key());
+        append(contents, "version", plan.version());
+        if (plan.java() != null)
+            append(contents, "java", plan.java().toAbsolutePath().toString());
+        append(contents, "directory", plan.workingDirectory().toAbsolutePath().toString());
+        append(contents, "natives", plan.nativesDirectory().toAbsolutePath().toString());
+        append(contents, "main", plan.mainClass());
+        if (plan.assetIndex() != null)
+            append(contents, "assets", plan.assetIndex().size() + "\t" + plan.assetIndex().modifiedMillis() + "\t" + plan.assetIndex().path().toAbsolutePath());
+        for (LaunchPlan.ClasspathEntry entry : plan.classpath())
+            append(contents, "classpath", entry.size() + "\t" + entry.path().toAbsolutePath());
+        for (String argument : plan.jvmArguments())
+            append(contents, "jvm", argument);
+        for (String argument : plan.gameArguments())
+            append(contents, "game", argument);
+
+        FileHelper.createFile(contents.toString().getBytes(StandardCharsets.UTF_8), getPath(profile));
+    }
+
+    private static void append(StringBuilder contents, String field, String value)
+    {
+        contents.append(field).append('\t').append(value).append('\n');
+    }
+
+    private Path getPath(String profile)
+    {
+        return directory.resolve(profile.replaceAll("[^A-Za-z0-9._-]", "_") + ".tsv");
+    }
+}
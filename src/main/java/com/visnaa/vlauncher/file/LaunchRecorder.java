@@ -0,0 +1,72 @@
+package com.visnaa.vlauncher.file;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+public class LaunchRecorder
+{
+    private static Recording recording;
+
+    public static synchronized void start()
+    {
+        if (recording != null)
+            return;
+
+        try
+        {
+            recording = new Recording(Configuration.getConfiguration("default"));
+            recording.setName("VLauncher");
+            recording.enable(LaunchPhaseEvent.class);
+            recording.enable(FileOperationEvent.class);
+            recording.start();
+            System.out.println("Flight recording started");
+        }
+        catch (Exception e)
+        {
+            recording = null;
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static synchronized Path dump(Path directory)
+    {
+        if (recording == null)
+            return null;
+
+        try
+        {
+            Files.createDirectories(directory);
+            Path path = directory.resolve("launch-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".jfr");
+            recording.dump(path);
+            System.out.println("Flight recording written to " + path);
+            return path;
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static synchronized Path stop(Path directory)
+    {
+        if (recording == null)
+            return null;
+
+        Path path = dump(directory);
+        recording.close();
+        recording = null;
+        System.out.println("Flight recording stopped");
+        return path;
+    }
+
+    public static synchronized boolean isRecording()
+    {
+        return recording != null;
+    }
+}
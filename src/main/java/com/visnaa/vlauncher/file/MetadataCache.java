@@ -0,0 +1,103 @@
+package com.visnaa.vlauncher.file;
+
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.function.Function;
+
+public class MetadataCache
+{
+    public static final Duration REVALIDATE_TIMEOUT = Duration.ofSeconds(3);
+
+    private final VerificationIndex verificationIndex;
+    private volatile boolean offline;
+
+    public MetadataCache(VerificationIndex verificationIndex)
+    {
+        this.verificationIndex = verificationIndex;
+    }
+
+    public String fetch(String url, Path path)
+    {
+        try
+        {
+            boolean cached = Files.exists(path);
+            if (cached && offline)
+                return Files.readString(path);
+
+            Path validatorsPath = path.resolveSibling(path.getFileName() + ".cache.json");
+            JsonObject validators = FileHelper.loadJsonConfigFile(validatorsPath.toString());
+            Function<URI, HttpRequest> request = uri -> {
+                HttpRequest.Builder builder = HttpTransport.request(uri.toString()).GET();
+                if (cached)
+                {
+                    builder.timeout(REVALIDATE_TIMEOUT);
+                    if (validators.has("etag"))
+                        builder.header("If-None-Match", validators.get("etag").getAsString());
+                    if (validators.has("lastModified"))
+                        builder.header("If-Modified-Since", validators.get("lastModified").getAsString());
+                }
+                return builder.build();
+            };
+
+            HttpResponse<byte[]> response;
+            try
+            {
+                response = HttpTransport.exchange(url, request, HttpResponse.BodyHandlers.ofByteArray(), !cached);
+            }
+            catch (IOException e)
+            {
+                if (!cached)
+                    throw e;
+                System.out.println("Could not revalidate " + url + ", using cached copy: " + e);
+                offline = true;
+                return Files.readString(path);
+            }
+
+            if (response.statusCode() == 304 && cached)
+                return Files.readString(path);
+            if (response.statusCode() != 200)
+            {
+                if (cached)
+                    return Files.readString(path);
+                throw new IOException("HTTP error " + response.statusCode() + " for " + url);
+            }
+
+            FileHelper.createFile(response.body(), path);
+            JsonObject newValidators = new JsonObject();
+            response.headers().firstValue("ETag").ifPresent(etag -> newValidators.addProperty("etag", etag));
+            response.headers().firstValue("Last-Modified").ifPresent(modified -> newValidators.addProperty("lastModified", modified));
+            FileHelper.saveJsonConfigFile(newValidators, validatorsPath.toString());
+            return new String(response.body(), StandardCharsets.UTF_8);
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public String fetch(String url, Path path, int size, String sha1)
+    {
+        try
+        {
+            FileHelper.downloadToFile(path, url, size, sha1, verificationIndex);
+            return Files.readString(path);
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public boolean isOffline()
+    {
+        return offline;
+    }
+}
@@ -0,0 +1,115 @@
+package com.visnaa.vlauncher.file;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+public class NativesCache
+{
+    public static final Duration MAX_AGE = Duration.ofDays(30);
+
+    private final Path directory;
+
+    public NativesCache(Path directory)
+    {
+        this.directory = directory;
+    }
+
+    public Path resolve(List<Artifact> natives, Set<String> extensions)
+    {
+        try
+        {
+            Path target = directory.resolve(key(natives, extensions));
+            if (Files.isDirectory(target))
+            {
+                Files.setLastModifiedTime(target, FileTime.fromMillis(System.currentTimeMillis()));
+                return target;
+            }
+
+            Files.createDirectories(directory);
+            Path temp = Files.createTempDirectory(directory, target.getFileName() + ".tmp");
+            try
+            {
+                for (Artifact artifact : natives)
+                    new ZipExtractor(artifact.path().toFile(), temp, extensions).extract();
+
+                try
+                {
+                    Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+                }
+                catch (FileSystemException e)
+                {
+                    // Another launcher extracted the same natives first, Linux reports that as DirectoryNotEmptyException
+                    if (!Files.isDirectory(target))
+                    {
+                        if (!(e instanceof AtomicMoveNotSupportedException))
+                            throw e;
+                        Files.move(temp, target);
+                    }
+                }
+            }
+            finally
+            {
+                FileHelper.deleteRecursively(temp);
+            }
+
+            collectGarbage(target);
+            return target;
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void collectGarbage(Path keep)
+    {
+        long cutoff = System.currentTimeMillis() - MAX_AGE.toMillis();
+        try (Stream<Path> entries = Files.list(directory))
+        {
+            entries.filter(entry -> !entry.equals(keep)).forEach(entry -> {
+                try
+                {
+                    if (Files.getLastModifiedTime(entry).toMillis() < cutoff)
+                    {
+                        System.out.println("Removing unused natives " + entry.getFileName());
+                        FileHelper.deleteRecursively(entry);
+                    }
+                }
+                catch (IOException e)
+                {
+                    System.out.println("Could not remove unused natives " + entry.getFileName() + ": " + e);
+                }
+            });
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String key(List<Artifact> natives, Set<String> extensions)
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            natives.stream().map(Artifact::sha1).sorted().forEach(sha1 -> digest.update(sha1.getBytes(StandardCharsets.US_ASCII)));
+            extensions.stream().sorted().forEach(extension -> digest.update(extension.getBytes(StandardCharsets.US_ASCII)));
+            return FileHelper.toHex(digest.digest());
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+}
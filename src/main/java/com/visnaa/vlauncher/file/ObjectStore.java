@@ -0,0 +1,257 @@
+package com.visnaa.vlauncher.file;
+
+import java.io.IOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Content-addressed store shared by every profile. Objects are stored by SHA-1 and hardlinked into each profile's
+ * directory. Files are only added when they can be linked, so a profile on another volume never doubles its disk use,
+ * but it can still copy objects that other profiles added. Stored objects are never modified in place, since every
+ * write goes through a temporary file and an atomic move.
+ */
+public class ObjectStore
+{
+    public static final String IMPORT_MARKER = "vlauncher-store-import";
+
+    private final Path directory;
+    // Roots on a volume the store cannot hardlink to, their files are never added
+    private final Set<Path> unlinkableRoots = ConcurrentHashMap.newKeySet();
+    private final Map<Path, Boolean> probedRoots = new ConcurrentHashMap<>();
+    // Modification time of each object when it was last hashed, linked copies share it with the stored object
+    private final Map<String, Long> verified = new ConcurrentHashMap<>();
+
+    public ObjectStore(Path directory)
+    {
+        this.directory = directory.toAbsolutePath().normalize();
+    }
+
+    public Path getPath(String sha1)
+    {
+        return directory.resolve(sha1.substring(0, 2)).resolve(sha1);
+    }
+
+    public boolean contains(Artifact artifact)
+    {
+        try
+        {
+            return artifact.sha1() != null && Files.size(getPath(artifact.sha1())) == artifact.size();
+        }
+        catch (IOException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Places a stored object at the artifact's path.
+     *
+     * @return false if the object is not in the store
+     */
+    public boolean materialize(Artifact artifact)
+    {
+        // Profiles share the object, so a copy rewritten in place would otherwise spread to every new profile
+        if (!contains(artifact) || !isIntact(artifact, false))
+            return false;
+
+        Path stored = getPath(artifact.sha1());
+        Path target = artifact.path();
+        try
+        {
+            if (Files.exists(target) && Files.isSameFile(stored, target))
+                return true;
+
+            Files.createDirectories(target.toAbsolutePath().getParent());
+            Path temp = target.resolveSibling(target.getFileName() + "." + System.nanoTime() + ".link");
+            try
+            {
+                linkOrCopy(stored, temp);
+                FileHelper.moveAtomically(temp, target);
+            }
+            finally
+            {
+                Files.deleteIfExists(temp);
+            }
+            return true;
+        }
+        catch (NoSuchFileException e)
+        {
+            return false;
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Checks once per root whether its files can be hardlinked into the store. Files under a root that cannot are
+     * skipped by {@link #add} instead of failing one link at a time.
+     */
+    public boolean registerRoot(Path root)
+    {
+        return probedRoots.computeIfAbsent(root.toAbsolutePath().normalize(), normalized -> {
+            boolean linkable = probeLink(normalized);
+            if (!linkable)
+                unlinkableRoots.add(normalized);
+            return linkable;
+        });
+    }
+
+    private boolean probeLink(Path root)
+    {
+        Path probe = null;
+        Path link = directory.resolve("link-probe." + System.nanoTime());
+        try
+        {
+            Files.createDirectories(root);
+            Files.createDirectories(directory);
+            probe = Files.createTempFile(root, "vlauncher-link", ".tmp");
+            Files.createLink(link, probe);
+            return true;
+        }
+        catch (UnsupportedOperationException | IOException e)
+        {
+            return false;
+        }
+        finally
+        {
+            FileHelper.delete(link);
+            if (probe != null)
+                FileHelper.delete(probe);
+        }
+    }
+
+    /**
+     * Adds the valid files of a root once, so an installation made before the store existed is shared with other
+     * profiles. Later files are added as they are downloaded.
+     */
+    public void importOnce(Path root, Supplier<List<Artifact>> installed)
+    {
+        Path marker = root.resolve(IMPORT_MARKER);
+        try
+        {
+            if (Files.exists(marker) && Files.readString(marker).equals(directory.toString()))
+                return;
+            if (registerRoot(root))
+                installed.get().parallelStream().forEach(this::add);
+            Files.writeString(marker, directory.toString());
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Adds a verified file to the store as a link, leaving the file itself in place
+    public void add(Artifact artifact)
+    {
+        if (artifact.sha1() == null || isUnlinkable(artifact.path()) || contains(artifact))
+            return;
+
+        Path stored = getPath(artifact.sha1());
+        try
+        {
+            Files.createDirectories(stored.getParent());
+            Path temp = stored.resolveSibling(artifact.sha1() + "." + System.nanoTime() + ".part");
+            try
+            {
+                // A copy would only duplicate the file, the next profile may be on the same volume as the store
+                Files.createLink(temp, artifact.path());
+                FileHelper.moveAtomically(temp, stored);
+            }
+            catch (UnsupportedOperationException | FileSystemException e)
+            {
+                if (e instanceof NoSuchFileException)
+                    throw (NoSuchFileException) e;
+            }
+            finally
+            {
+                Files.deleteIfExists(temp);
+            }
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private boolean isUnlinkable(Path path)
+    {
+        if (unlinkableRoots.isEmpty())
+            return false;
+        Path absolute = path.toAbsolutePath().normalize();
+        for (Path root : unlinkableRoots)
+        {
+            if (absolute.startsWith(root))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Hashes the stored object and removes it if it does not match.
+     *
+     * @return true if a valid object remains in the store
+     */
+    public boolean verify(Artifact artifact)
+    {
+        return contains(artifact) && isIntact(artifact, true);
+    }
+
+    // Hashes an object once per session and again whenever it was modified since
+    private boolean isIntact(Artifact artifact, boolean force)
+    {
+        Path stored = getPath(artifact.sha1());
+        try
+        {
+            long modified = Files.getLastModifiedTime(stored).toMillis();
+            Long verifiedModified = verified.get(artifact.sha1());
+            if (!force && verifiedModified != null && verifiedModified == modified)
+                return true;
+
+            if (artifact.sha1().equals(FileHelper.sha1(stored)))
+            {
+                verified.put(artifact.sha1(), modified);
+                return true;
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            return false;
+        }
+
+        verified.remove(artifact.sha1());
+        System.out.println("Removing corrupted object " + artifact.sha1() + " from the store");
+        FileHelper.delete(stored);
+        return false;
+    }
+
+    // Java has no portable reflink, so this is a hardlink or a full copy
+    private static void linkOrCopy(Path source, Path target) throws IOException
+    {
+        try
+        {
+            Files.createLink(target, source);
+        }
+        catch (UnsupportedOperationException | FileSystemException e)
+        {
+            if (e instanceof NoSuchFileException)
+                throw (NoSuchFileException) e;
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    public Path getDirectory()
+    {
+        return directory;
+    }
+}
@@ -0,0 +1,242 @@
+package com.visnaa.vlauncher.file;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SegmentedDownload
+{
+    public static final int SEGMENT_SIZE = 4 * 1024 * 1024;
+    public static final int DEFAULT_CONNECTIONS = 4;
+
+    private final Path path;
+    private final String url;
+    private final long size;
+    private final String sha1;
+    private final Path partPath;
+    private final Path statePath;
+    private final VerificationIndex index;
+    private long length;
+    private BitSet completed;
+
+    private SegmentedDownload(Path path, String url, long size, String sha1, VerificationIndex index)
+    {
+        this.index = index;
+        this.path = path;
+        this.url = url;
+        this.size = size;
+        this.sha1 = sha1;
+        this.partPath = path.resolveSibling(path.getFileName() + ".part");
+        this.statePath = path.resolveSibling(path.getFileName() + ".part.json");
+    }
+
+    public static File download(Path path, String url)
+    {
+        return download(path, url, -1, null, DEFAULT_CONNECTIONS, null);
+    }
+
+    public static File download(Path path, String url, long size, String sha1, int connections, VerificationIndex index)
+    {
+        try
+        {
+            if ((size != -1 || sha1 != null) && FileHelper.isValid(path, size, sha1, index))
+                return path.toFile();
+
+            SegmentedDownload download = new SegmentedDownload(path, url, size, sha1, index);
+            if (!download.probe() || !download.run(connections))
+                return FileHelper.downloadToFile(path, url, (int) size, sha1, index);
+            return path.toFile();
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private boolean probe() throws IOException, InterruptedException
+    {
+        HttpResponse<Void> response = HttpTransport.exchange(url, uri -> HttpTransport.request(uri.toString()).method("HEAD", HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.discarding());
+        length = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+        boolean ranges = response.headers().allValues("Accept-Ranges").contains("bytes");
+        if (response.statusCode() != 200 || !ranges || length <= SEGMENT_SIZE || (size != -1 && length != size))
+            return false;
+
+        completed = loadState();
+        if (completed == null || !Files.exists(partPath) || Files.size(partPath) != length)
+        {
+            completed = new BitSet(getSegmentCount());
+            Files.createDirectories(partPath.toAbsolutePath().getParent());
+            try (RandomAccessFile file = new RandomAccessFile(partPath.toFile(), "rw"))
+            {
+                file.setLength(length);
+            }
+            saveState();
+        }
+        else
+            System.out.println("Resuming download of " + path.getFileName() + ", " + completed.cardinality() + "/" + getSegmentCount() + " segments present");
+        return true;
+    }
+
+    private boolean run(int connections) throws Exception
+    {
+        List<Integer> missing = new ArrayList<>();
+        for (int i = completed.nextClearBit(0); i < getSegmentCount(); i = completed.nextClearBit(i + 1))
+            missing.add(i);
+
+        AtomicInteger next = new AtomicInteger();
+        List<Future<Boolean>> workers = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(partPath, StandardOpenOption.WRITE);
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor())
+        {
+            for (int i = 0; i < Math.min(connections, missing.size()); i++)
+            {
+                workers.add(executor.submit(() -> {
+                    int index;
+                    while ((index = next.getAndIncrement()) < missing.size())
+                    {
+                        if (!downloadSegment(channel, missing.get(index)))
+                            return false;
+                    }
+                    return true;
+                }));
+            }
+
+            for (Future<Boolean> worker : workers)
+            {
+                if (!worker.get())
+                {
+                    discard();
+                    return false;
+                }
+            }
+        }
+
+        if (sha1 != null && !sha1.equals(FileHelper.sha1(partPath)))
+        {
+            DownloadMetrics.get().recordVerificationFailure();
+            discard();
+            throw new IllegalStateException("File's SHA-1 did not match");
+        }
+
+        FileHelper.moveAtomically(partPath, path);
+        Files.deleteIfExists(statePath);
+        DownloadMetrics.get().recordFile();
+        if (index != null)
+            index.record(path, sha1);
+        return true;
+    }
+
+    private boolean downloadSegment(FileChannel channel, int segment) throws IOException, InterruptedException
+    {
+        long start = (long) segment * SEGMENT_SIZE;
+        long end = Math.min(start + SEGMENT_SIZE, length) - 1;
+        // Opening the range request is already retried by HttpTransport, this covers transfers that break off
+        for (int retry = 0; ; retry++)
+        {
+            HttpResponse<InputStream> response = HttpTransport.exchange(url, uri -> HttpTransport.request(uri.toString()).header("Range", "bytes=" + start + "-" + end).GET().build(), HttpResponse.BodyHandlers.ofInputStream());
+            if (response.statusCode() != 206)
+            {
+                response.body().close();
+                if (response.statusCode() == 200)
+                    return false;
+                throw new IOException("HTTP error " + response.statusCode() + " for segment " + segment + " of " + url);
+            }
+
+            try (InputStream stream = HttpTransport.withIdleTimeout(response.body()))
+            {
+                copySegment(stream, channel, segment, start, end);
+                break;
+            }
+            catch (IOException e)
+            {
+                if (retry >= HttpTransport.getRetries())
+                    throw e;
+                DownloadMetrics.get().recordRetry(url);
+                System.out.println("Retrying segment " + segment + " of " + url + ": " + e);
+                Thread.sleep(HttpTransport.getBackoffMillis(retry));
+            }
+        }
+
+        channel.force(false);
+        synchronized (this)
+        {
+            completed.set(segment);
+            saveState();
+        }
+        return true;
+    }
+
+    private void copySegment(InputStream stream, FileChannel channel, int segment, long start, long end) throws IOException
+    {
+        byte[] buffer = new byte[64 * 1024];
+        long position = start;
+        int read;
+        while ((read = stream.read(buffer)) != -1)
+        {
+            if (position + read > end + 1)
+                throw new IOException("Server sent more data than requested for segment " + segment);
+            ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, read);
+            while (bytes.hasRemaining())
+                position += channel.write(bytes, position);
+            DownloadMetrics.get().recordBytes(read);
+        }
+
+        if (position != end + 1)
+            throw new IOException("Segment " + segment + " of " + url + " ended early");
+    }
+
+    private int getSegmentCount()
+    {
+        return (int) ((length + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+    }
+
+    private BitSet loadState()
+    {
+        if (!Files.exists(statePath))
+            return null;
+
+        JsonObject state = FileHelper.loadJsonConfigFile(statePath.toString());
+        if (!url.equals(state.get("url").getAsString()) || state.get("length").getAsLong() != length || state.get("segmentSize").getAsInt() != SEGMENT_SIZE)
+            return null;
+
+        BitSet segments = new BitSet(getSegmentCount());
+        state.getAsJsonArray("completed").forEach(segment -> segments.set(segment.getAsInt()));
+        return segments;
+    }
+
+    private void saveState()
+    {
+        JsonObject state = new JsonObject();
+        state.addProperty("url", url);
+        state.addProperty("length", length);
+        state.addProperty("segmentSize", SEGMENT_SIZE);
+        JsonArray segments = new JsonArray();
+        completed.stream().forEach(segments::add);
+        state.add("completed", segments);
+        FileHelper.saveJsonConfigFile(state, statePath.toString());
+    }
+
+    private void discard() throws IOException
+    {
+        Files.deleteIfExists(partPath);
+        Files.deleteIfExists(statePath);
+    }
+}
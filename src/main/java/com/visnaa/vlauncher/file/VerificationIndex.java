@@ -0,0 +1,149 @@
+package com.visnaa.vlauncher.file;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class VerificationIndex
+{
+    public static final String FILE_NAME = "vlauncher-verified.tsv";
+
+    private final Path root;
+    private final Path file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean deepVerify;
+    private volatile boolean dirty;
+
+    public VerificationIndex(Path root)
+    {
+        this.root = root.toAbsolutePath().normalize();
+        this.file = this.root.resolve(FILE_NAME);
+        load();
+    }
+
+    public boolean isVerified(Path path, long size, String sha1)
+    {
+        try
+        {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (size != -1 && attributes.size() != size)
+                return false;
+
+            String key = key(path);
+            Entry entry = entries.get(key);
+            if (!deepVerify && entry != null && entry.matches(attributes) && (sha1 == null || sha1.equals(entry.sha1())))
+                return true;
+
+            if (sha1 == null)
+                return false;
+
+            if (!sha1.equals(FileHelper.sha1(path)))
+            {
+                if (entries.remove(key) != null)
+                    dirty = true;
+                return false;
+            }
+            entries.put(key, new Entry(attributes.size(), attributes.lastModifiedTime().toMillis(), sha1));
+            dirty = true;
+            return true;
+        }
+        catch (NoSuchFileException e)
+        {
+            return false;
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void record(Path path, String sha1)
+    {
+        if (sha1 == null)
+            return;
+
+        try
+        {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            entries.put(key(path), new Entry(attributes.size(), attributes.lastModifiedTime().toMillis(), sha1));
+            dirty = true;
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void invalidate(Path path)
+    {
+        if (entries.remove(key(path)) != null)
+            dirty = true;
+    }
+
+    public boolean isDeepVerify()
+    {
+        return deepVerify;
+    }
+
+    public void setDeepVerify(boolean deepVerify)
+    {
+        this.deepVerify = deepVerify;
+    }
+
+    public int size()
+    {
+        return entries.size();
+    }
+
+    private String key(Path path)
+    {
+        return root.relativize(path.toAbsolutePath().normalize()).toString().replace('\\', '/');
+    }
+
+    private void load()
+    {
+        if (!Files.exists(file))
+            return;
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8))
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                String[] fields = line.split("\t");
+                if (fields.length == 4)
+                    entries.put(fields[0], new Entry(Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[3]));
+            }
+        }
+        catch (Exception e)
+        {
+            System.out.println("Could not read verification index, files will be re-hashed: " + e.getMessage());
+            entries.clear();
+        }
+    }
+
+    public synchronized void save()
+    {
+        if (!dirty)
+            return;
+        dirty = false;
+
+        StringBuilder contents = new StringBuilder(entries.size() * 96);
+        entries.forEach((path, entry) -> contents.append(path).append('\t').append(entry.size()).append('\t').append(entry.modified()).append('\t').append(entry.sha1()).append('\n'));
+        FileHelper.createFile(contents.toString().getBytes(StandardCharsets.UTF_8), file);
+    }
+
+    private record Entry(long size, long modified, String sha1)
+    {
+        private boolean matches(BasicFileAttributes attributes)
+        {
+            return attributes.size() == size && attributes.lastModifiedTime().toMillis() == modified;
+        }
+    }
+}
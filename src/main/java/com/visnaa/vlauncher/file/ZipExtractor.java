@@ -0,0 +1,141 @@
+package com.visnaa.vlauncher.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+public class ZipExtractor
+{
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File source;
+    private final Path destination;
+    private final Set<String> extensions;
+
+    public ZipExtractor(File source, Path destination, Set<String> extensions)
+    {
+        this.source = source;
+        this.destination = destination.toAbsolutePath().normalize();
+        this.extensions = extensions;
+    }
+
+    public boolean extract()
+    {
+        if (!source.exists())
+            return false;
+
+        Path marker = destination.resolve("." + source.getName() + ".extracted");
+        String stamp = source.length() + " " + source.lastModified() + " " + extensions;
+        try
+        {
+            if (Files.exists(marker) && Files.readString(marker).equals(stamp))
+                return true;
+
+            long start = System.nanoTime();
+            long bytes;
+            int files;
+            try (ZipFile zip = new ZipFile(source))
+            {
+                List<ZipEntry> entries = new ArrayList<>();
+                Set<Path> directories = new HashSet<>();
+                zip.stream().forEach(entry -> {
+                    Path target = resolve(entry);
+                    if (entry.isDirectory())
+                        directories.add(target);
+                    else if (accepts(entry.getName()))
+                    {
+                        entries.add(entry);
+                        directories.add(target.getParent());
+                    }
+                });
+
+                Files.createDirectories(destination);
+                for (Path directory : directories)
+                    Files.createDirectories(directory);
+
+                entries.sort(Comparator.comparingLong(ZipEntry::getSize).reversed());
+                bytes = inflate(zip, entries);
+                files = entries.size();
+            }
+
+            Files.writeString(marker, stamp, StandardCharsets.UTF_8);
+
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Extracted %d files (%.2f MB) from %s in %.2f s (%.1f MB/s)%n", files, bytes / 1_048_576D, source.getName(), seconds, bytes / 1_048_576D / Math.max(seconds, 1e-9));
+            return true;
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private long inflate(ZipFile zip, List<ZipEntry> entries) throws Exception
+    {
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(), Math.max(1, entries.size()));
+        AtomicInteger next = new AtomicInteger();
+        List<Future<Long>> workers = new ArrayList<>(threads);
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads))
+        {
+            for (int i = 0; i < threads; i++)
+            {
+                workers.add(executor.submit(() -> {
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    long written = 0;
+                    int index;
+                    while ((index = next.getAndIncrement()) < entries.size())
+                    {
+                        ZipEntry entry = entries.get(index);
+                        try (InputStream input = zip.getInputStream(entry);
+                             OutputStream output = Files.newOutputStream(resolve(entry)))
+                        {
+                            int read;
+                            while ((read = input.read(buffer)) != -1)
+                            {
+                                output.write(buffer, 0, read);
+                                written += read;
+                            }
+                        }
+                    }
+                    return written;
+                }));
+            }
+
+            long bytes = 0;
+            for (Future<Long> worker : workers)
+                bytes += worker.get();
+            return bytes;
+        }
+    }
+
+    private boolean accepts(String name)
+    {
+        if (extensions.isEmpty())
+            return true;
+        int dot = name.lastIndexOf('.');
+        return dot != -1 && extensions.contains(name.substring(dot + 1));
+    }
+
+    private Path resolve(ZipEntry entry)
+    {
+        Path target = destination.resolve(entry.getName()).normalize();
+        if (!target.startsWith(destination))
+            throw new IllegalStateException("Zip entry " + entry.getName() + " is outside of " + destination);
+        return target;
+    }
+}
@@ -1,7 +1,12 @@
 package com.visnaa.vlauncher.gui;
 
 import com.visnaa.vlauncher.Main;
+import com.visnaa.vlauncher.file.Artifact;
+import com.visnaa.vlauncher.file.DownloadListener;
+import com.visnaa.vlauncher.file.DownloadMetrics;
+import com.visnaa.vlauncher.file.DownloadProgress;
 import com.visnaa.vlauncher.minecraft.Profile;
+import com.visnaa.vlauncher.minecraft.VersionManifest;
 
 import javax.swing.*;
 import javax.swing.border.BevelBorder;
@@ -19,8 +24,11 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 
-public class GuiManager
+public class GuiManager implements DownloadListener
 {
+    private static final int LOADING_FRAME_RATE = 15;
+    private static final int LOADING_PROGRESS_STEPS = 1000;
+
     private final int width, height;
     private final String title;
     private final Image icon;
@@ -28,9 +36,19 @@ public class GuiManager
     private JDialog loadingPopup;
     private JLabel loadingText;
     private JProgressBar loadingProgress;
-    private float loadingProgressMultiplier = 1;
     private JLabel loadingProgressDone;
+    private JLabel loadingProgressSize;
+    private JLabel loadingProgressRate;
+    private Timer loadingTimer;
+    private volatile DownloadProgress loadingModel = new DownloadProgress();
     private JComboBox<Profile> profile;
+    private JTextField playerName;
+    private JButton createProfileButton;
+    private JButton playButton;
+    private JButton verifyButton;
+    private JCheckBox flightRecorder;
+    private JButton exportButton;
+    private JButton importButton;
 
     public GuiManager(int width, int height, String title, Image icon)
     {
@@ -59,6 +77,12 @@ public class GuiManager
 
         frame.addWindowListener(new WindowAdapter()
         {
+            @Override
+            public void windowOpened(WindowEvent e)
+            {
+                System.out.println("Launcher window shown in " + (System.nanoTime() - Main.getInstance().getStartTime()) / 1_000_000 + " ms");
+            }
+
             @Override
             public void windowClosing(WindowEvent e)
             {
@@ -70,10 +94,10 @@ public class GuiManager
         JPanel mainPanel = new JPanel();
         JPanel profilePanel = new JPanel();
 
-        profile = new JComboBox<>(Main.getInstance().getProfiles().toArray(new Profile[0]));
-        profile.setSelectedItem(Main.getInstance().getCurrentProfile());
+        profile = new JComboBox<>();
 
-        JButton createProfileButton = new JButton("Create a New Profile");
+        createProfileButton = new JButton("Create a New Profile");
+        createProfileButton.setEnabled(false);
         createProfileButton.addActionListener(_ -> {
             createProfileCreation();
         });
@@ -82,13 +106,13 @@ public class GuiManager
 
         JLabel playerNameLabel = new JLabel("Player Name: ");
 
-        JTextField playerName = new JTextField();
+        playerName = new JTextField();
         playerName.setColumns(16);
-        playerName.setText(Main.getInstance().getPlayerName());
 
         JPanel playPanel = new JPanel();
 
-        JButton playButton = new JButton("PLAY");
+        playButton = new JButton("PLAY");
+        playButton.setEnabled(false);
         playButton.addActionListener(_ ->
             new Thread(() -> {
                 if (Main.getInstance().getMinecraft() != null)
@@ -101,6 +125,67 @@ public class GuiManager
                 Main.getInstance().startGame();
             }).start());
 
+        verifyButton = new JButton("Verify & Repair");
+        verifyButton.setEnabled(false);
+        verifyButton.addActionListener(_ ->
+            new Thread(() -> {
+                if (Main.getInstance().getMinecraft() != null)
+                {
+                    SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(frame, "An instance of Minecraft is already running", "Minecraft is Running", JOptionPane.INFORMATION_MESSAGE));
+                    return;
+                }
+                Main.getInstance().setCurrentProfile((Profile) profile.getSelectedItem());
+                Main.getInstance().verifyAndRepair();
+            }).start());
+
+        JButton statisticsButton = new JButton("Statistics");
+        statisticsButton.addActionListener(_ -> showStatistics());
+
+        JPanel bundlePanel = new JPanel();
+
+        exportButton = new JButton("Export Bundle");
+        exportButton.setEnabled(false);
+        exportButton.addActionListener(_ -> {
+            if (profile.getSelectedItem() == null)
+                return;
+            JFileChooser fileChooser = new JFileChooser("");
+            fileChooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
+            fileChooser.setFileFilter(new FileNameExtensionFilter("VLauncher bundles (*.zip)", "zip"));
+            fileChooser.setSelectedFile(new File(((Profile) profile.getSelectedItem()).version() + ".zip"));
+            if (fileChooser.showSaveDialog(frame) != JFileChooser.APPROVE_OPTION)
+                return;
+            Path bundle = fileChooser.getSelectedFile().toPath();
+            new Thread(() -> {
+                Main.getInstance().setCurrentProfile((Profile) profile.getSelectedItem());
+                Main.getInstance().exportBundle(bundle);
+            }).start();
+        });
+
+        importButton = new JButton("Import Bundle");
+        importButton.setEnabled(false);
+        importButton.addActionListener(_ -> {
+            if (profile.getSelectedItem() == null)
+                return;
+            JFileChooser fileChooser = new JFileChooser("");
+            fileChooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
+            fileChooser.setFileFilter(new FileNameExtensionFilter("VLauncher bundles (*.zip)", "zip"));
+            if (fileChooser.showOpenDialog(frame) != JFileChooser.APPROVE_OPTION)
+                return;
+            Path bundle = fileChooser.getSelectedFile().toPath();
+            new Thread(() -> {
+                Main.getInstance().setCurrentProfile((Profile) profile.getSelectedItem());
+                Main.getInstance().importBundle(bundle);
+            }).start();
+        });
+
+        flightRecorder = new JCheckBox("Flight Recorder");
+        flightRecorder.setEnabled(false);
+        flightRecorder.addActionListener(_ -> {
+            boolean enabled = flightRecorder.isSelected();
+            // Stopping writes the recording to disk, which should not block the UI
+            new Thread(() -> Main.getInstance().setFlightRecorder(enabled)).start();
+        });
+
         profilePanel.add(profile);
         profilePanel.add(createProfileButton);
 
@@ -108,15 +193,54 @@ public class GuiManager
         playerPanel.add(playerName);
 
         playPanel.add(playButton);
+        playPanel.add(verifyButton);
+        playPanel.add(statisticsButton);
+        playPanel.add(flightRecorder);
+
+        bundlePanel.add(exportButton);
+        bundlePanel.add(importButton);
 
         mainPanel.add(profilePanel);
         mainPanel.add(playerPanel);
         mainPanel.add(playPanel);
+        mainPanel.add(bundlePanel);
         frame.add(mainPanel);
         frame.setVisible(true);
+    }
 
-        if (Main.getInstance().getCurrentProfile() == null)
-            createProfileCreation();
+    public void setPlayerName(String name)
+    {
+        SwingUtilities.invokeLater(() -> playerName.setText(name));
+    }
+
+    public void setFlightRecorder(boolean enabled)
+    {
+        SwingUtilities.invokeLater(() -> flightRecorder.setSelected(enabled));
+    }
+
+    public void setDownloaderReady()
+    {
+        SwingUtilities.invokeLater(() -> {
+            createProfileButton.setEnabled(true);
+            playButton.setEnabled(true);
+            verifyButton.setEnabled(true);
+            exportButton.setEnabled(true);
+            importButton.setEnabled(true);
+            flightRecorder.setEnabled(true);
+        });
+    }
+
+    public void showStatistics()
+    {
+        JTextArea statistics = new JTextArea(DownloadMetrics.get().getSummary());
+        statistics.setEditable(false);
+        statistics.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        JOptionPane.showMessageDialog(frame, new JScrollPane(statistics), "Download Statistics", JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    public void showError(String message)
+    {
+        SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(frame, message, "Error", JOptionPane.ERROR_MESSAGE));
     }
 
     public JFrame getFrame()
@@ -157,8 +281,9 @@ public class GuiManager
             JPanel versionPanel = new JPanel();
 
             JLabel versionLabel = new JLabel("Version: ");
-            JComboBox<String> versions = new JComboBox<>(Main.getInstance().getDownloader().getVersions().toArray(new String[0]));
-            versions.setSelectedItem(Main.getInstance().getDownloader().getLatestRelease());
+            VersionManifest manifest = Main.getInstance().getDownloader().getVersionManifest();
+            JComboBox<String> versions = new JComboBox<>(new VersionListModel(manifest));
+            versions.setSelectedItem(manifest.getLatestRelease());
 
             versionPanel.add(versionLabel);
             versionPanel.add(versions);
@@ -308,6 +433,11 @@ public class GuiManager
 
     public void createLoadingPopup(long totalSize)
     {
+        // Workers only update the model, the popup samples it at a fixed frame rate
+        DownloadProgress model = new DownloadProgress();
+        model.status("Launching Minecraft...");
+        model.extendTotal(totalSize);
+        loadingModel = model;
         SwingUtilities.invokeLater(() -> {
             loadingPopup = new JDialog(frame, "Starting Minecraft...", Dialog.ModalityType.APPLICATION_MODAL);
             loadingPopup.setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
@@ -321,37 +451,54 @@ public class GuiManager
 
             JPanel progressPanel = new JPanel();
             progressPanel.setLayout(new GridLayout(1, 3));
-            if (totalSize >= Integer.MAX_VALUE)
-            {
-                for (long i = 2; i < Long.MAX_VALUE; i++)
-                {
-                    if (totalSize / i > Integer.MAX_VALUE)
-                        continue;
-
-                    loadingProgress = new JProgressBar(0, (int) (totalSize / i));
-                    loadingProgressMultiplier = 1F / i;
-                }
-            }
-            else
-                loadingProgress = new JProgressBar(0, (int) totalSize);
-
+            // The bar shows a fraction, so totals above Integer.MAX_VALUE bytes need no scaling
+            loadingProgress = new JProgressBar(0, LOADING_PROGRESS_STEPS);
             loadingProgressDone = new JLabel("0 MB", SwingConstants.RIGHT);
-            JLabel loadingProgressSize = new JLabel(String.format("%.2f", totalSize / 1_048_576F) + " MB", SwingConstants.LEFT);
+            loadingProgressSize = new JLabel(formatMegabytes(totalSize), SwingConstants.LEFT);
 
             progressPanel.add(loadingProgressDone);
             progressPanel.add(loadingProgress);
             progressPanel.add(loadingProgressSize);
 
+            JPanel ratePanel = new JPanel();
+            loadingProgressRate = new JLabel(" ");
+            ratePanel.add(loadingProgressRate);
+
             mainPanel.add(textPanel);
             mainPanel.add(progressPanel);
+            mainPanel.add(ratePanel);
 
             loadingPopup.add(mainPanel);
-            loadingPopup.setSize(600, 100);
+            loadingPopup.setSize(600, 120);
             loadingPopup.setLocationRelativeTo(null);
+
+            if (loadingTimer != null)
+                loadingTimer.stop();
+            loadingTimer = new Timer(1000 / LOADING_FRAME_RATE, _ -> updateLoadingPopup(model));
+            loadingTimer.start();
+            // Blocks until the popup is disposed, the timer keeps firing meanwhile
             loadingPopup.setVisible(true);
         });
     }
 
+    private void updateLoadingPopup(DownloadProgress model)
+    {
+        DownloadProgress.Snapshot snapshot = model.sample();
+        if (!snapshot.status().equals(loadingText.getText()))
+            loadingText.setText(snapshot.status());
+        loadingProgress.setValue((int) (snapshot.fraction() * LOADING_PROGRESS_STEPS));
+        loadingProgressDone.setText(formatMegabytes(snapshot.done()));
+        loadingProgressSize.setText(formatMegabytes(snapshot.total()));
+        loadingProgressRate.setText(snapshot.bytesPerSecond() >= 1
+                ? String.format("%.2f MB/s, %s remaining", snapshot.bytesPerSecond() / 1_048_576D, snapshot.formatEta())
+                : " ");
+    }
+
+    private static String formatMegabytes(long bytes)
+    {
+        return String.format("%.2f", bytes / 1_048_576D) + " MB";
+    }
+
     public void setCurrentProfile(Profile profile, List<Profile> profiles)
     {
         SwingUtilities.invokeLater(() -> {
@@ -362,22 +509,89 @@ public class GuiManager
 
     public void setLoadingText(String text)
     {
-        SwingUtilities.invokeLater(() -> loadingText.setText(text));
+        loadingModel.status(text);
     }
 
-    public void progressLoading(int size)
+    @Override
+    public void status(String status)
     {
-        SwingUtilities.invokeLater(() -> {
-            loadingProgress.setValue((int) (loadingProgress.getValue() + (size * loadingProgressMultiplier)));
-            loadingProgressDone.setText(String.format("%.2f", loadingProgress.getValue() / 1_048_576F) + " MB");
-        });
+        loadingModel.status(status);
+    }
+
+    @Override
+    public void extendTotal(long bytes)
+    {
+        loadingModel.extendTotal(bytes);
+    }
+
+    @Override
+    public void progress(long bytes)
+    {
+        loadingModel.progress(bytes);
+    }
+
+    @Override
+    public void fileStarted(Artifact artifact)
+    {
+        loadingModel.status("Downloading " + artifact.name());
+    }
+
+    @Override
+    public void fileFinished(Artifact artifact)
+    {
+        loadingModel.fileFinished(artifact);
     }
 
     public void disposeLoadingPopup()
     {
         SwingUtilities.invokeLater(() -> {
+            if (loadingTimer != null)
+                loadingTimer.stop();
+            if (loadingPopup == null)
+                return;
             loadingPopup.dispose();
             frame.remove(loadingPopup);
         });
     }
+
+    // Reads the version ids straight from the manifest instead of copying them into the combo box
+    private static class VersionListModel extends AbstractListModel<String> implements ComboBoxModel<String>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final transient VersionManifest manifest;
+        private transient Object selected;
+
+        private VersionListModel(VersionManifest manifest)
+        {
+            this.manifest = manifest;
+        }
+
+        @Override
+        public int getSize()
+        {
+            return manifest.getIds().size();
+        }
+
+        @Override
+        public String getElementAt(int index)
+        {
+            return manifest.getIds().get(index);
+        }
+
+        @Override
+        public void setSelectedItem(Object item)
+        {
+            if (item != null && manifest.get(item.toString()) == null)
+                return;
+            selected = item;
+            fireContentsChanged(this, -1, -1);
+        }
+
+        @Override
+        public Object getSelectedItem()
+        {
+            return selected;
+        }
+    }
 }
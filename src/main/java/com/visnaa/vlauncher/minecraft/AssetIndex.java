@@ -0,0 +1,143 @@
+package com.visnaa.vlauncher.minecraft;
+
+import com.google.gson.stream.JsonReader;
+import com.visnaa.vlauncher.file.FileHelper;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * The objects of an asset index, read in one streaming pass into parallel arrays: the names, the SHA-1 hashes as 20
+ * raw bytes each, and the sizes. Iterating by position with {@link #getName}, {@link #getSize} and {@link #getHashByte}
+ * allocates nothing, only {@link #getHash} builds a string.
+ */
+public final class AssetIndex
+{
+    public static final int HASH_LENGTH = 20;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final String[] names;
+    private final byte[] hashes;
+    private final int[] sizes;
+    private final int count;
+    private final long totalSize;
+
+    private AssetIndex(String[] names, byte[] hashes, int[] sizes, int count)
+    {
+        this.names = names;
+        this.hashes = hashes;
+        this.sizes = sizes;
+        this.count = count;
+        long totalSize = 0;
+        for (int i = 0; i < count; i++)
+            totalSize += sizes[i];
+        this.totalSize = totalSize;
+    }
+
+    public static AssetIndex parse(Reader reader)
+    {
+        try (JsonReader json = new JsonReader(reader))
+        {
+            String[] names = new String[INITIAL_CAPACITY];
+            byte[] hashes = new byte[INITIAL_CAPACITY * HASH_LENGTH];
+            int[] sizes = new int[INITIAL_CAPACITY];
+            int count = 0;
+
+            json.beginObject();
+            while (json.hasNext())
+            {
+                if (!json.nextName().equals("objects"))
+                {
+                    json.skipValue();
+                    continue;
+                }
+
+                json.beginObject();
+                while (json.hasNext())
+                {
+                    if (count == sizes.length)
+                    {
+                        names = Arrays.copyOf(names, count * 2);
+                        hashes = Arrays.copyOf(hashes, count * 2 * HASH_LENGTH);
+                        sizes = Arrays.copyOf(sizes, count * 2);
+                    }
+
+                    String name = json.nextName();
+                    names[count] = name;
+                    sizes[count] = -1;
+                    boolean hashed = false;
+                    json.beginObject();
+                    while (json.hasNext())
+                    {
+                        switch (json.nextName())
+                        {
+                            case "hash" -> {
+                                parseHex(json.nextString(), hashes, count * HASH_LENGTH);
+                                hashed = true;
+                            }
+                            case "size" -> sizes[count] = json.nextInt();
+                            default -> json.skipValue();
+                        }
+                    }
+                    json.endObject();
+                    if (!hashed)
+                        throw new IllegalStateException("Asset " + name + " has no hash");
+                    count++;
+                }
+                json.endObject();
+            }
+            json.endObject();
+            // Trimmed so the index only keeps what it holds
+            return new AssetIndex(Arrays.copyOf(names, count), Arrays.copyOf(hashes, count * HASH_LENGTH), Arrays.copyOf(sizes, count), count);
+        }
+        catch (IOException | IllegalStateException | NumberFormatException e)
+        {
+            throw new RuntimeException("Could not parse the asset index", e);
+        }
+    }
+
+    private static void parseHex(String hex, byte[] destination, int offset)
+    {
+        if (hex.length() != HASH_LENGTH * 2)
+            throw new IllegalStateException("Invalid SHA-1 " + hex);
+        for (int i = 0; i < HASH_LENGTH; i++)
+        {
+            int high = Character.digit(hex.charAt(i * 2), 16);
+            int low = Character.digit(hex.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0)
+                throw new IllegalStateException("Invalid SHA-1 " + hex);
+            destination[offset + i] = (byte) (high << 4 | low);
+        }
+    }
+
+    public int size()
+    {
+        return count;
+    }
+
+    public long getTotalSize()
+    {
+        return totalSize;
+    }
+
+    public String getName(int index)
+    {
+        return names[index];
+    }
+
+    public int getSize(int index)
+    {
+        return sizes[index];
+    }
+
+    public byte getHashByte(int index, int position)
+    {
+        return hashes[index * HASH_LENGTH + position];
+    }
+
+    public String getHash(int index)
+    {
+        return FileHelper.toHex(hashes, index * HASH_LENGTH, HASH_LENGTH);
+    }
+}
@@ -0,0 +1,112 @@
+package com.visnaa.vlauncher.minecraft;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class LaunchPipeline
+{
+    private final Map<String, Node> nodes = new LinkedHashMap<>();
+    private long startTime;
+
+    public LaunchPipeline add(String name, Runnable task, String... dependencies)
+    {
+        for (String dependency : dependencies)
+        {
+            if (!nodes.containsKey(dependency))
+                throw new IllegalArgumentException("Unknown dependency " + dependency + " of " + name);
+        }
+        nodes.put(name, new Node(name, task, List.of(dependencies)));
+        return this;
+    }
+
+    public void run()
+    {
+        startTime = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor())
+        {
+            for (Node node : nodes.values())
+            {
+                CompletableFuture<?>[] dependencies = node.dependencies.stream().map(dependency -> nodes.get(dependency).future).toArray(CompletableFuture[]::new);
+                node.future = CompletableFuture.allOf(dependencies).thenRunAsync(node::run, executor);
+            }
+
+            CompletableFuture.allOf(nodes.values().stream().map(node -> node.future).toArray(CompletableFuture[]::new)).join();
+        }
+        catch (CompletionException e)
+        {
+            throw e.getCause() instanceof RuntimeException runtime ? runtime : new RuntimeException(e.getCause());
+        }
+        finally
+        {
+            printTimings();
+        }
+    }
+
+    public Map<String, Long> getDurations()
+    {
+        Map<String, Long> durations = new LinkedHashMap<>();
+        nodes.values().forEach(node -> durations.put(node.name, node.end - node.start));
+        return durations;
+    }
+
+    public List<String> getCriticalPath()
+    {
+        List<String> path = new ArrayList<>();
+        Node node = nodes.values().stream().filter(Node::isFinished).max(Comparator.comparingLong(n -> n.end)).orElse(null);
+        while (node != null)
+        {
+            path.addFirst(node.name);
+            node = node.dependencies.stream().map(nodes::get).filter(Node::isFinished).max(Comparator.comparingLong(n -> n.end)).orElse(null);
+        }
+        return path;
+    }
+
+    private void printTimings()
+    {
+        System.out.println("Launch pipeline timings:");
+        for (Node node : nodes.values())
+        {
+            if (node.isFinished())
+                System.out.printf("  %-12s start %6d ms, took %6d ms%n", node.name, (node.start - startTime) / 1_000_000, (node.end - node.start) / 1_000_000);
+            else
+                System.out.printf("  %-12s did not finish%n", node.name);
+        }
+        System.out.println("  critical path: " + String.join(" -> ", getCriticalPath()) + ", total " + (System.nanoTime() - startTime) / 1_000_000 + " ms");
+    }
+
+    private static class Node
+    {
+        private final String name;
+        private final Runnable task;
+        private final List<String> dependencies;
+        private CompletableFuture<Void> future;
+        private volatile long start;
+        private volatile long end;
+
+        private Node(String name, Runnable task, List<String> dependencies)
+        {
+            this.name = name;
+            this.task = task;
+            this.dependencies = dependencies;
+        }
+
+        private void run()
+        {
+            start = System.nanoTime();
+            task.run();
+            end = System.nanoTime();
+        }
+
+        private boolean isFinished()
+        {
+            return end != 0;
+        }
+    }
+}
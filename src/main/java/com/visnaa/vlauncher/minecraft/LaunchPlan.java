@@ -0,0 +1,89 @@
+package com.visnaa.vlauncher.minecraft;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Everything needed to start a version, with all arguments already resolved. A plan stays valid as long as its key
+ * matches and the files it points to are still there, so relaunching does not need the version JSON.
+ *
+ * @param key        hash of the version JSON and the launch settings the plan was built from
+ * @param java       the runtime to start, null to use {@code java} from the PATH
+ * @param assetIndex the asset index as it was when the plan was built, null if there was none
+ */
+public record LaunchPlan(String key, String version, Path java, Path workingDirectory, Path nativesDirectory, String mainClass, FileStamp assetIndex,
+                         List<ClasspathEntry> classpath, List<String> jvmArguments, List<String> gameArguments)
+{
+    public List<String> command()
+    {
+        List<String> command = new ArrayList<>(2 + jvmArguments.size() + gameArguments.size());
+        command.add(java != null ? java.toAbsolutePath().toString() : "java");
+        command.addAll(jvmArguments);
+        command.add(mainClass);
+        command.addAll(gameArguments);
+        return command;
+    }
+
+    // Only checks that the files exist with the right sizes, hashes and the asset objects are left to Verify & Repair
+    public boolean isValid()
+    {
+        try
+        {
+            if (!Files.isDirectory(nativesDirectory) || (java != null && !Files.isRegularFile(java)))
+                return false;
+            if (assetIndex != null && !assetIndex.matches())
+                return false;
+            for (ClasspathEntry entry : classpath)
+            {
+                if (!Files.isRegularFile(entry.path()) || Files.size(entry.path()) != entry.size())
+                    return false;
+            }
+            return true;
+        }
+        catch (IOException e)
+        {
+            return false;
+        }
+    }
+
+    public String toScript()
+    {
+        StringBuilder script = new StringBuilder("@echo off\n");
+        script.append("echo Staring Minecraft ").append(version).append(" using VLauncher!\n");
+        for (String argument : command())
+            script.append(quote(argument)).append(' ');
+        script.setLength(script.length() - 1);
+        return script.append('\n').toString();
+    }
+
+    private static String quote(String argument)
+    {
+        for (int i = 0; i < argument.length(); i++)
+        {
+            char c = argument.charAt(i);
+            if (!Character.isLetterOrDigit(c) && "-_.=:/\\,+@${}".indexOf(c) < 0)
+                return "\"" + argument + "\"";
+        }
+        return argument.isEmpty() ? "\"\"" : argument;
+    }
+
+    public record ClasspathEntry(Path path, long size)
+    {
+    }
+
+    public record FileStamp(Path path, long size, long modifiedMillis)
+    {
+        public static FileStamp of(Path path) throws IOException
+        {
+            return new FileStamp(path, Files.size(path), Files.getLastModifiedTime(path).toMillis());
+        }
+
+        public boolean matches() throws IOException
+        {
+            return Files.isRegularFile(path) && Files.size(path) == size && Files.getLastModifiedTime(path).toMillis() == modifiedMillis;
+        }
+    }
+}
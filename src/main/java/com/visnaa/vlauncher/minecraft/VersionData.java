@@ -0,0 +1,228 @@
+package com.visnaa.vlauncher.minecraft;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The parts of a version JSON the launcher uses, parsed in one streaming pass. Conditional arguments (the objects with
+ * rules) are skipped, so {@code gameArguments} and {@code jvmArguments} only hold the plain strings.
+ *
+ * @param gameArguments null for old versions, which use {@code minecraftArguments} instead
+ */
+public record VersionData(String id, String type, String assets, String mainClass, int javaVersion, Download client, AssetIndex assetIndex,
+                          List<Library> libraries, List<String> gameArguments, List<String> jvmArguments, String minecraftArguments)
+{
+    public static final int DEFAULT_JAVA_VERSION = 8;
+
+    public static VersionData parse(Reader reader)
+    {
+        try (JsonReader json = new JsonReader(reader))
+        {
+            String id = null;
+            String type = null;
+            String assets = null;
+            String mainClass = null;
+            int javaVersion = DEFAULT_JAVA_VERSION;
+            Download client = null;
+            AssetIndex assetIndex = null;
+            List<Library> libraries = List.of();
+            List<String> gameArguments = null;
+            List<String> jvmArguments = null;
+            String minecraftArguments = null;
+
+            json.beginObject();
+            while (json.hasNext())
+            {
+                switch (json.nextName())
+                {
+                    case "id" -> id = json.nextString();
+                    case "type" -> type = json.nextString();
+                    case "assets" -> assets = json.nextString();
+                    case "mainClass" -> mainClass = json.nextString();
+                    case "minecraftArguments" -> minecraftArguments = json.nextString();
+                    case "javaVersion" -> {
+                        json.beginObject();
+                        while (json.hasNext())
+                        {
+                            if (json.nextName().equals("majorVersion"))
+                                javaVersion = json.nextInt();
+                            else
+                                json.skipValue();
+                        }
+                        json.endObject();
+                    }
+                    case "downloads" -> client = readDownloads(json).get("client");
+                    case "assetIndex" -> assetIndex = readAssetIndex(json);
+                    case "libraries" -> libraries = readLibraries(json);
+                    case "arguments" -> {
+                        gameArguments = List.of();
+                        jvmArguments = List.of();
+                        json.beginObject();
+                        while (json.hasNext())
+                        {
+                            switch (json.nextName())
+                            {
+                                case "game" -> gameArguments = readPlainArguments(json);
+                                case "jvm" -> jvmArguments = readPlainArguments(json);
+                                default -> json.skipValue();
+                            }
+                        }
+                        json.endObject();
+                    }
+                    default -> json.skipValue();
+                }
+            }
+            json.endObject();
+            return new VersionData(id, type, assets, mainClass, javaVersion, client, assetIndex, libraries, gameArguments, jvmArguments, minecraftArguments);
+        }
+        catch (IOException | IllegalStateException e)
+        {
+            throw new RuntimeException("Could not parse the version data", e);
+        }
+    }
+
+    public boolean hasArguments()
+    {
+        return gameArguments != null;
+    }
+
+    private static List<String> readPlainArguments(JsonReader json) throws IOException
+    {
+        List<String> arguments = new ArrayList<>();
+        json.beginArray();
+        while (json.hasNext())
+        {
+            if (json.peek() == JsonToken.STRING)
+                arguments.add(json.nextString());
+            else
+                json.skipValue();
+        }
+        json.endArray();
+        return arguments;
+    }
+
+    private static List<Library> readLibraries(JsonReader json) throws IOException
+    {
+        List<Library> libraries = new ArrayList<>();
+        json.beginArray();
+        while (json.hasNext())
+        {
+            String name = null;
+            Download artifact = null;
+            Map<String, Download> classifiers = Map.of();
+            Map<String, String> natives = Map.of();
+            json.beginObject();
+            while (json.hasNext())
+            {
+                switch (json.nextName())
+                {
+                    case "name" -> name = json.nextString();
+                    case "downloads" -> {
+                        json.beginObject();
+                        while (json.hasNext())
+                        {
+                            switch (json.nextName())
+                            {
+                                case "artifact" -> artifact = readDownload(json);
+                                case "classifiers" -> classifiers = readDownloads(json);
+                                default -> json.skipValue();
+                            }
+                        }
+                        json.endObject();
+                    }
+                    case "natives" -> {
+                        natives = new HashMap<>();
+                        json.beginObject();
+                        while (json.hasNext())
+                            natives.put(json.nextName(), json.nextString());
+                        json.endObject();
+                    }
+                    default -> json.skipValue();
+                }
+            }
+            json.endObject();
+            libraries.add(new Library(name, artifact, classifiers, natives));
+        }
+        json.endArray();
+        return libraries;
+    }
+
+    private static Map<String, Download> readDownloads(JsonReader json) throws IOException
+    {
+        Map<String, Download> downloads = new HashMap<>();
+        json.beginObject();
+        while (json.hasNext())
+            downloads.put(json.nextName(), readDownload(json));
+        json.endObject();
+        return downloads;
+    }
+
+    private static Download readDownload(JsonReader json) throws IOException
+    {
+        String path = null;
+        String url = null;
+        int size = -1;
+        String sha1 = null;
+        json.beginObject();
+        while (json.hasNext())
+        {
+            switch (json.nextName())
+            {
+                case "path" -> path = json.nextString();
+                case "url" -> url = json.nextString();
+                case "size" -> size = json.nextInt();
+                case "sha1" -> sha1 = json.nextString();
+                default -> json.skipValue();
+            }
+        }
+        json.endObject();
+        return new Download(path, url, size, sha1);
+    }
+
+    private static AssetIndex readAssetIndex(JsonReader json) throws IOException
+    {
+        String id = null;
+        String url = null;
+        int size = -1;
+        String sha1 = null;
+        json.beginObject();
+        while (json.hasNext())
+        {
+            switch (json.nextName())
+            {
+                case "id" -> id = json.nextString();
+                case "url" -> url = json.nextString();
+                case "size" -> size = json.nextInt();
+                case "sha1" -> sha1 = json.nextString();
+                default -> json.skipValue();
+            }
+        }
+        json.endObject();
+        return new AssetIndex(id, url, size, sha1);
+    }
+
+    /**
+     * @param path relative to the libraries directory, null for the client jar
+     */
+    public record Download(String path, String url, int size, String sha1)
+    {
+    }
+
+    public record AssetIndex(String id, String url, int size, String sha1)
+    {
+    }
+
+    /**
+     * @param natives classifier name of the natives for each OS, for old versions that ship natives as classifiers
+     */
+    public record Library(String name, Download artifact, Map<String, Download> classifiers, Map<String, String> natives)
+    {
+    }
+}
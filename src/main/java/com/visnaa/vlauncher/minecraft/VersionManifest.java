@@ -0,0 +1,136 @@
+package com.visnaa.vlauncher.minecraft;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The list of released versions, parsed in one streaming pass. Versions keep the manifest's order (newest first) and
+ * can be looked up by id in constant time.
+ */
+public class VersionManifest
+{
+    private final String latestRelease;
+    private final String latestSnapshot;
+    private final List<Entry> versions;
+    private final List<String> ids;
+    private final Map<String, Entry> index;
+
+    private VersionManifest(String latestRelease, String latestSnapshot, List<Entry> versions)
+    {
+        this.latestRelease = latestRelease;
+        this.latestSnapshot = latestSnapshot;
+        this.versions = Collections.unmodifiableList(versions);
+
+        List<String> ids = new ArrayList<>(versions.size());
+        Map<String, Entry> index = HashMap.newHashMap(versions.size());
+        for (Entry version : versions)
+        {
+            ids.add(version.id());
+            index.putIfAbsent(version.id(), version);
+        }
+        this.ids = Collections.unmodifiableList(ids);
+        this.index = index;
+    }
+
+    public static VersionManifest parse(Reader reader)
+    {
+        try (JsonReader json = new JsonReader(reader))
+        {
+            String latestRelease = null;
+            String latestSnapshot = null;
+            List<Entry> versions = new ArrayList<>();
+
+            json.beginObject();
+            while (json.hasNext())
+            {
+                switch (json.nextName())
+                {
+                    case "latest" -> {
+                        json.beginObject();
+                        while (json.hasNext())
+                        {
+                            switch (json.nextName())
+                            {
+                                case "release" -> latestRelease = json.nextString();
+                                case "snapshot" -> latestSnapshot = json.nextString();
+                                default -> json.skipValue();
+                            }
+                        }
+                        json.endObject();
+                    }
+                    case "versions" -> {
+                        json.beginArray();
+                        while (json.hasNext())
+                            versions.add(readEntry(json));
+                        json.endArray();
+                    }
+                    default -> json.skipValue();
+                }
+            }
+            json.endObject();
+            return new VersionManifest(latestRelease, latestSnapshot, versions);
+        }
+        catch (IOException | IllegalStateException e)
+        {
+            throw new RuntimeException("Could not parse the version manifest", e);
+        }
+    }
+
+    private static Entry readEntry(JsonReader json) throws IOException
+    {
+        String id = null;
+        String type = null;
+        String url = null;
+        String sha1 = null;
+        json.beginObject();
+        while (json.hasNext())
+        {
+            switch (json.nextName())
+            {
+                case "id" -> id = json.nextString();
+                case "type" -> type = json.nextString();
+                case "url" -> url = json.nextString();
+                case "sha1" -> sha1 = json.nextString();
+                default -> json.skipValue();
+            }
+        }
+        json.endObject();
+        return new Entry(id, type, url, sha1);
+    }
+
+    public Entry get(String id)
+    {
+        return index.get(id);
+    }
+
+    public String getLatestRelease()
+    {
+        return latestRelease;
+    }
+
+    public String getLatestSnapshot()
+    {
+        return latestSnapshot;
+    }
+
+    public List<Entry> getVersions()
+    {
+        return versions;
+    }
+
+    public List<String> getIds()
+    {
+        return ids;
+    }
+
+    public record Entry(String id, String type, String url, String sha1)
+    {
+    }
+}
@@ -0,0 +1,452 @@
+package com.visnaa.vlauncher.server;
+
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.visnaa.vlauncher.file.FileHelper;
+import com.visnaa.vlauncher.file.HttpStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * A caching HTTP proxy for the URL spaces the launcher downloads from. Launchers on the LAN point their mirrors at
+ * {@code http://host:port/<name>/}, so each object is fetched from upstream once and then served from a bounded disk
+ * cache with least-recently-used eviction. Concurrent requests for the same missing object share one upstream fetch.
+ */
+public class MirrorServer
+{
+    public static final int DEFAULT_PORT = 25580;
+    public static final String DEFAULT_CACHE = "vlauncher-mirror";
+    public static final long DEFAULT_CACHE_SIZE_MB = 20 * 1024;
+    public static final long MUTABLE_TTL_MILLIS = 5 * 60 * 1000;
+    public static final Map<String, String> DEFAULT_UPSTREAMS = Map.of(
+            "piston-meta", "https://piston-meta.mojang.com/",
+            "piston-data", "https://piston-data.mojang.com/",
+            "libraries", "https://libraries.minecraft.net/",
+            "resources", "https://resources.download.minecraft.net/",
+            "github", "https://github.com/");
+
+    private static final Pattern SHA1_SEGMENT = Pattern.compile(".*/[0-9a-f]{40}(/.*)?");
+
+    private final int port;
+    private final Path cacheDirectory;
+    private final long maxCacheBytes;
+    private final Map<String, String> upstreams;
+    private final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<>(16, 0.75F, true);
+    private final Map<String, CompletableFuture<Path>> inflight = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder servedBytes = new LongAdder();
+    private final LongAdder upstreamBytes = new LongAdder();
+    private long cacheBytes;
+    private long mutableTtlMillis = MUTABLE_TTL_MILLIS;
+    private HttpServer server;
+
+    public MirrorServer(int port, Path cacheDirectory, long maxCacheBytes, Map<String, String> upstreams)
+    {
+        this.port = port;
+        this.cacheDirectory = cacheDirectory.toAbsolutePath().normalize();
+        this.maxCacheBytes = maxCacheBytes;
+        this.upstreams = Map.copyOf(upstreams);
+    }
+
+    // Usage: --mirror-server [--port N] [--cache DIR] [--cache-size MB] [--upstream name=url]...
+    public static MirrorServer fromArgs(String[] args)
+    {
+        int port = DEFAULT_PORT;
+        Path cache = Path.of(DEFAULT_CACHE);
+        long cacheSize = DEFAULT_CACHE_SIZE_MB;
+        Map<String, String> upstreams = new LinkedHashMap<>(DEFAULT_UPSTREAMS);
+        for (int i = 0; i < args.length; i++)
+        {
+            switch (args[i])
+            {
+                case "--mirror-server" -> {}
+                case "--port" -> port = Integer.parseInt(args[++i]);
+                case "--cache" -> cache = Path.of(args[++i]);
+                case "--cache-size" -> cacheSize = Long.parseLong(args[++i]);
+                case "--upstream" -> {
+                    String[] upstream = args[++i].split("=", 2);
+                    upstreams.put(upstream[0], upstream[1].endsWith("/") ? upstream[1] : upstream[1] + "/");
+                }
+                default -> throw new IllegalArgumentException("Unknown mirror server option " + args[i]);
+            }
+        }
+        return new MirrorServer(port, cache, cacheSize * 1024 * 1024, upstreams);
+    }
+
+    public void start() throws IOException
+    {
+        Files.createDirectories(cacheDirectory);
+        loadCache();
+
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/", this::handle);
+        server.start();
+        System.out.println("Mirror server listening on port " + getPort() + ", caching " + entries.size() + " objects (" + cacheBytes / 1_048_576 + " MB) in " + cacheDirectory);
+        upstreams.forEach((name, url) -> System.out.println("  /" + name + "/ -> " + url));
+    }
+
+    public void stop()
+    {
+        if (server != null)
+            server.stop(0);
+    }
+
+    void setMutableTtlMillis(long mutableTtlMillis)
+    {
+        this.mutableTtlMillis = mutableTtlMillis;
+    }
+
+    public int getPort()
+    {
+        return server == null ? port : server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException
+    {
+        try (exchange)
+        {
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getRawPath();
+            if (path.equals("/stats"))
+            {
+                respond(exchange, 200, getStats().toString());
+                return;
+            }
+            if (!method.equals("GET") && !method.equals("HEAD"))
+            {
+                respond(exchange, 405, "Method not allowed");
+                return;
+            }
+
+            int slash = path.indexOf('/', 1);
+            String upstream = slash == -1 ? null : upstreams.get(path.substring(1, slash));
+            if (upstream == null || path.contains(".."))
+            {
+                respond(exchange, 404, "Unknown mirror path " + path);
+                return;
+            }
+
+            String query = exchange.getRequestURI().getRawQuery();
+            String url = upstream + path.substring(slash + 1) + (query == null ? "" : "?" + query);
+            FileChannel channel;
+            try
+            {
+                channel = get(url);
+            }
+            catch (Exception e)
+            {
+                String message = e.getCause() != null ? e.getCause().toString() : e.toString();
+                System.out.println("Upstream fetch of " + url + " failed: " + message);
+                respond(exchange, getUpstreamStatus(e) == 404 ? 404 : 502, message);
+                return;
+            }
+            try (channel)
+            {
+                serve(exchange, channel, path, method.equals("HEAD"));
+            }
+        }
+        catch (IOException e)
+        {
+            System.out.println("Could not serve " + exchange.getRequestURI() + ": " + e);
+        }
+    }
+
+    // Returns the object already opened, so evicting it while it is being served cannot delete it from under the reader
+    private FileChannel get(String url)
+    {
+        String key = key(url);
+        Path file = getPath(key);
+        FileChannel channel = isFresh(key, url) ? open(key) : null;
+        if (channel != null)
+        {
+            hits.increment();
+            touch(key, file);
+            return channel;
+        }
+
+        CompletableFuture<Path> fetch = new CompletableFuture<>();
+        CompletableFuture<Path> existing = inflight.putIfAbsent(key, fetch);
+        if (existing != null)
+        {
+            hits.increment();
+            existing.join();
+            channel = open(key);
+            // Evicted again before this request got to it, so it is fetched once more
+            return channel != null ? channel : get(url);
+        }
+        misses.increment();
+
+        try
+        {
+            FileHelper.fetchToFile(file, url, -1, null, null);
+            long size = Files.size(file);
+            upstreamBytes.add(size);
+            synchronized (entries)
+            {
+                add(key, size, System.currentTimeMillis());
+                channel = FileChannel.open(file);
+            }
+            fetch.complete(file);
+            return channel;
+        }
+        catch (Exception e)
+        {
+            fetch.completeExceptionally(e);
+            throw e instanceof RuntimeException runtime ? runtime : new RuntimeException(e);
+        }
+        finally
+        {
+            inflight.remove(key);
+        }
+    }
+
+    // Opened under the lock that eviction takes, null when the object is not cached
+    private FileChannel open(String key)
+    {
+        synchronized (entries)
+        {
+            if (!entries.containsKey(key))
+                return null;
+            try
+            {
+                return FileChannel.open(getPath(key));
+            }
+            catch (NoSuchFileException e)
+            {
+                // Deleted outside the server, forget it so it is fetched again
+                cacheBytes -= entries.remove(key).size();
+                return null;
+            }
+            catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    // Hash-addressed objects never change, everything else is refetched after a short time
+    private boolean isFresh(String key, String url)
+    {
+        CacheEntry entry;
+        synchronized (entries)
+        {
+            entry = entries.get(key);
+        }
+        if (entry == null)
+            return false;
+        if (!url.startsWith(upstreams.getOrDefault("piston-meta", "")) || SHA1_SEGMENT.matcher(url).matches())
+            return true;
+        // The modification time only tracks access, the fetch time is kept apart so hits do not extend the TTL
+        return System.currentTimeMillis() - entry.fetchedMillis() < mutableTtlMillis;
+    }
+
+    private static int getUpstreamStatus(Throwable e)
+    {
+        for (Throwable cause = e; cause != null; cause = cause.getCause())
+        {
+            if (cause instanceof HttpStatusException status)
+                return status.getStatusCode();
+        }
+        return -1;
+    }
+
+    private void serve(HttpExchange exchange, FileChannel channel, String path, boolean head) throws IOException
+    {
+        long size = channel.size();
+        long start = 0;
+        long end = size - 1;
+        int status = 200;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null && range.startsWith("bytes=") && !range.contains(","))
+        {
+            String[] bounds = range.substring("bytes=".length()).split("-", 2);
+            try
+            {
+                if (bounds[0].isEmpty())
+                    start = Math.max(0, size - Long.parseLong(bounds[1]));
+                else
+                {
+                    start = Long.parseLong(bounds[0]);
+                    if (!bounds[1].isEmpty())
+                        end = Math.min(end, Long.parseLong(bounds[1]));
+                }
+            }
+            catch (NumberFormatException e)
+            {
+                respond(exchange, 416, "Invalid range " + range);
+                return;
+            }
+            if (start > end)
+            {
+                exchange.getResponseHeaders().set("Content-Range", "bytes */" + size);
+                respond(exchange, 416, "Invalid range " + range);
+                return;
+            }
+            status = 206;
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + size);
+        }
+
+        long length = end - start + 1;
+        exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+        exchange.getResponseHeaders().set("Content-Type", path.endsWith(".json") ? "application/json" : "application/octet-stream");
+        if (head)
+        {
+            exchange.getResponseHeaders().set("Content-Length", String.valueOf(length));
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+
+        exchange.sendResponseHeaders(status, length);
+        try (InputStream input = Channels.newInputStream(channel.position(start)); OutputStream output = exchange.getResponseBody())
+        {
+            byte[] buffer = new byte[64 * 1024];
+            long remaining = length;
+            while (remaining > 0)
+            {
+                int read = input.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read == -1)
+                    break;
+                output.write(buffer, 0, read);
+                remaining -= read;
+            }
+            servedBytes.add(length - remaining);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String message) throws IOException
+    {
+        byte[] body = message.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, exchange.getRequestMethod().equals("HEAD") ? -1 : body.length);
+        if (!exchange.getRequestMethod().equals("HEAD"))
+            exchange.getResponseBody().write(body);
+    }
+
+    private void loadCache() throws IOException
+    {
+        try (Stream<Path> files = Files.walk(cacheDirectory))
+        {
+            files.filter(Files::isRegularFile)
+                    .filter(file -> file.getFileName().toString().matches("[0-9a-f]{40}"))
+                    .sorted(Comparator.comparingLong(MirrorServer::lastModified))
+                    .forEach(file -> {
+                        try
+                        {
+                            // The fetch time is not known after a restart, so mutable objects are fetched again once
+                            add(file.getFileName().toString(), Files.size(file), 0);
+                        }
+                        catch (IOException e)
+                        {
+                            System.out.println("Could not read cached object " + file + ": " + e);
+                        }
+                    });
+        }
+    }
+
+    private void add(String key, long size, long fetchedMillis)
+    {
+        synchronized (entries)
+        {
+            CacheEntry previous = entries.put(key, new CacheEntry(size, fetchedMillis));
+            cacheBytes += size - (previous == null ? 0 : previous.size());
+            Iterator<Map.Entry<String, CacheEntry>> iterator = entries.entrySet().iterator();
+            while (cacheBytes > maxCacheBytes && iterator.hasNext())
+            {
+                Map.Entry<String, CacheEntry> eldest = iterator.next();
+                if (eldest.getKey().equals(key))
+                    continue;
+                iterator.remove();
+                cacheBytes -= eldest.getValue().size();
+                FileHelper.delete(getPath(eldest.getKey()));
+            }
+        }
+    }
+
+    private void touch(String key, Path file)
+    {
+        synchronized (entries)
+        {
+            entries.get(key);
+        }
+        // The access time on disk restores the LRU order after a restart
+        try
+        {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        }
+        catch (IOException ignored)
+        {
+        }
+    }
+
+    private Path getPath(String key)
+    {
+        return cacheDirectory.resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    private static String key(String url)
+    {
+        try
+        {
+            return FileHelper.toHex(MessageDigest.getInstance("SHA-1").digest(url.getBytes(StandardCharsets.UTF_8)));
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static long lastModified(Path file)
+    {
+        try
+        {
+            return Files.getLastModifiedTime(file).toMillis();
+        }
+        catch (IOException e)
+        {
+            return 0;
+        }
+    }
+
+    public JsonObject getStats()
+    {
+        JsonObject stats = new JsonObject();
+        synchronized (entries)
+        {
+            stats.addProperty("objects", entries.size());
+            stats.addProperty("cacheBytes", cacheBytes);
+        }
+        stats.addProperty("maxCacheBytes", maxCacheBytes);
+        stats.addProperty("hits", hits.sum());
+        stats.addProperty("misses", misses.sum());
+        stats.addProperty("servedBytes", servedBytes.sum());
+        stats.addProperty("upstreamBytes", upstreamBytes.sum());
+        return stats;
+    }
+
+    private record CacheEntry(long size, long fetchedMillis)
+    {
+    }
+}
@@ -0,0 +1,196 @@
+package com.visnaa.vlauncher.server;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs the mirror against a local stand-in for the upstream hosts, which counts the requests that reach it.
+ */
+class MirrorServerTest
+{
+    private static final String OBJECT = "resources/ab/ab00000000000000000000000000000000000000";
+    private static final String MANIFEST = "piston-meta/mc/game/version_manifest_v2.json";
+
+    private final Map<String, AtomicInteger> originRequests = new ConcurrentHashMap<>();
+    private final HttpClient client = HttpClient.newHttpClient();
+    private HttpServer origin;
+    private MirrorServer mirror;
+
+    @TempDir
+    Path cache;
+
+    @BeforeEach
+    void startOrigin() throws IOException
+    {
+        origin = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        origin.createContext("/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            originRequests.computeIfAbsent(path, _ -> new AtomicInteger()).incrementAndGet();
+            if (path.contains("missing"))
+            {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
+            }
+            byte[] body = contents(path);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        origin.setExecutor(Executors.newCachedThreadPool());
+        origin.start();
+    }
+
+    @AfterEach
+    void stop()
+    {
+        if (mirror != null)
+            mirror.stop();
+        origin.stop(0);
+    }
+
+    @Test
+    void fetchesEachObjectFromUpstreamOnce() throws Exception
+    {
+        startMirror(1024 * 1024);
+
+        HttpResponse<byte[]> miss = get(OBJECT, null);
+        HttpResponse<byte[]> hit = get(OBJECT, null);
+
+        assertEquals(200, miss.statusCode());
+        assertEquals(200, hit.statusCode());
+        assertArrayEquals(contents("/" + OBJECT), miss.body());
+        assertArrayEquals(contents("/" + OBJECT), hit.body());
+        assertEquals(1, originRequests("/" + OBJECT));
+        assertEquals(1, mirror.getStats().get("hits").getAsLong());
+        assertEquals(1, mirror.getStats().get("misses").getAsLong());
+    }
+
+    @Test
+    void servesRanges() throws Exception
+    {
+        startMirror(1024 * 1024);
+        byte[] contents = contents("/" + OBJECT);
+
+        HttpResponse<byte[]> range = get(OBJECT, "bytes=10-19");
+        assertEquals(206, range.statusCode());
+        assertEquals("bytes 10-19/" + contents.length, range.headers().firstValue("Content-Range").orElseThrow());
+        assertArrayEquals(Arrays.copyOfRange(contents, 10, 20), range.body());
+
+        HttpResponse<byte[]> suffix = get(OBJECT, "bytes=-5");
+        assertEquals(206, suffix.statusCode());
+        assertArrayEquals(Arrays.copyOfRange(contents, contents.length - 5, contents.length), suffix.body());
+
+        assertEquals(416, get(OBJECT, "bytes=" + contents.length + "-").statusCode());
+        assertEquals(1, originRequests("/" + OBJECT));
+    }
+
+    @Test
+    void refetchesMutableObjectsAfterTheTtlEvenWhenHit() throws Exception
+    {
+        startMirror(1024 * 1024);
+        mirror.setMutableTtlMillis(300);
+
+        get(MANIFEST, null);
+        long start = System.currentTimeMillis();
+        while (System.currentTimeMillis() - start < 250)
+        {
+            get(MANIFEST, null);
+            Thread.sleep(25);
+        }
+        assertEquals(1, originRequests("/" + MANIFEST));
+
+        Thread.sleep(100);
+        get(MANIFEST, null);
+        assertEquals(2, originRequests("/" + MANIFEST));
+
+        // Hash-addressed objects never expire
+        get(OBJECT, null);
+        Thread.sleep(350);
+        get(OBJECT, null);
+        assertEquals(1, originRequests("/" + OBJECT));
+    }
+
+    @Test
+    void passesUpstreamNotFoundThrough() throws Exception
+    {
+        startMirror(1024 * 1024);
+        assertEquals(404, get("resources/missing", null).statusCode());
+    }
+
+    @Test
+    void servesObjectsThatAreEvictedWhileBeingRead() throws Exception
+    {
+        // Room for a single object, so every fetch evicts the one before it
+        startMirror(contents("/resources/00/0").length);
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(8))
+        {
+            List<Future<?>> requests = new ArrayList<>();
+            for (int i = 0; i < 64; i++)
+            {
+                String path = "resources/" + i % 16 + "/" + i % 16;
+                requests.add(executor.submit(() -> {
+                    HttpResponse<byte[]> response = get(path, null);
+                    assertEquals(200, response.statusCode());
+                    assertArrayEquals(contents("/" + path), response.body());
+                    return null;
+                }));
+            }
+            for (Future<?> request : requests)
+                request.get();
+        }
+    }
+
+    private void startMirror(long maxCacheBytes) throws IOException
+    {
+        String upstream = "http://127.0.0.1:" + origin.getAddress().getPort() + "/";
+        mirror = new MirrorServer(0, cache, maxCacheBytes, Map.of("piston-meta", upstream + "piston-meta/", "resources", upstream + "resources/"));
+        mirror.start();
+    }
+
+    private HttpResponse<byte[]> get(String path, String range) throws IOException, InterruptedException
+    {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + mirror.getPort() + "/" + path));
+        if (range != null)
+            request.header("Range", range);
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private int originRequests(String path)
+    {
+        AtomicInteger requests = originRequests.get(path);
+        return requests == null ? 0 : requests.get();
+    }
+
+    private static byte[] contents(String path)
+    {
+        byte[] contents = new byte[256 * 1024];
+        new Random(path.hashCode()).nextBytes(contents);
+        return contents;
+    }
+}